@@ -0,0 +1,58 @@
+import benchmark.WeightedList;
+
+/**
+ * Adapts the trees to WeightedList. The trees live in the default package, which JMH does not allow for benchmark
+ * classes, and a named package can not refer to the default package. So this class stays in the default package
+ * and the benchmarks load it by name.
+ */
+public final class Subjects {
+
+    private Subjects() {
+
+    }
+
+    public static WeightedList create(String tree) {
+        switch (tree) {
+            case "BalancedWeightTree":
+                return adapt(new BalancedWeightTree());
+            case "SimplifiedBalancedWeightTree":
+                return adapt(new SimplifiedBalancedWeightTree());
+            case "NonRecursiveBalancedWeightTree":
+                return adapt(new NonRecursiveBalancedWeightTree());
+            case "ContractedBalancedWeightTree":
+                return adapt(new ContractedBalancedWeightTree());
+            case "ArrayBalancedWeightTree":
+                return adapt(new ArrayBalancedWeightTree());
+            case "FenwickWeightedList":
+                return adapt(new FenwickWeightedList());
+            case "WideWeightedList":
+                return adapt(new WideWeightedList());
+            default:
+                throw new IllegalArgumentException("Unknown tree " + tree);
+        }
+    }
+
+    private static WeightedList adapt(WeightTree subject) {
+        return new WeightedList() {
+            public int weightSum() { return subject.weightSum(); }
+            public String select(int weight) { return subject.select(weight); }
+            public void insert(String id, int weight) { subject.insert(id, weight); }
+            public boolean update(String id, int weight) { return subject.update(id, weight); }
+            public boolean remove(String id) { return subject.remove(id); }
+        };
+    }
+
+    /**
+     * ArrayBalancedWeightTree is not a WeightTree, since its insert returns the handle of the entry.
+     */
+    private static WeightedList adapt(ArrayBalancedWeightTree subject) {
+        return new WeightedList() {
+            public int weightSum() { return subject.weightSum(); }
+            public String select(int weight) { return subject.select(weight); }
+            public void insert(String id, int weight) { subject.insert(id, weight); }
+            public boolean update(String id, int weight) { return subject.update(id, weight); }
+            public boolean remove(String id) { return subject.remove(id); }
+        };
+    }
+
+}
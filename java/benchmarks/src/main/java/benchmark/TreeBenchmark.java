@@ -0,0 +1,144 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of select, update, insert and remove for every tree, list size and weight distribution.
+ * The tree is filled through insert in random order once per trial. All the random input is drawn up front so
+ * the measured loop only touches the tree. Run with -prof gc to see the allocation rate as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmark {
+
+    private static final int INPUT_SIZE = 1 << 16;
+
+    @Param({
+            "BalancedWeightTree",
+            "SimplifiedBalancedWeightTree",
+            "NonRecursiveBalancedWeightTree",
+            "ContractedBalancedWeightTree",
+            "ArrayBalancedWeightTree",
+            "FenwickWeightedList",
+            "WideWeightedList"
+    })
+    public String tree;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"UNIFORM", "ZIPFIAN", "CONSTANT"})
+    public WeightDistribution distribution;
+
+    private WeightedList list;
+
+    private String[] ids;
+    private int[] weights;
+
+    private final int[] selectWeights = new int[INPUT_SIZE];
+    private final int[] entries = new int[INPUT_SIZE];
+    private final int[] updateWeights = new int[INPUT_SIZE];
+    private final String[] freshIds = new String[INPUT_SIZE];
+
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        list = (WeightedList) Class.forName("Subjects").getMethod("create", String.class).invoke(null, tree);
+
+        SplittableRandom random = new SplittableRandom(42);
+
+        ids = new String[size];
+        weights = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            ids[i] = "entry-" + i;
+            weights[i] = distribution.weight(random, size);
+        }
+
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+
+            String id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+
+        for (int i = 0; i < size; i++) {
+            list.insert(ids[i], weights[i]);
+        }
+
+        int weightSum = list.weightSum();
+
+        for (int i = 0; i < INPUT_SIZE; i++) {
+            selectWeights[i] = random.nextInt(weightSum);
+            entries[i] = random.nextInt(size);
+            updateWeights[i] = distribution.weight(random, size);
+            freshIds[i] = "fresh-" + i;
+        }
+    }
+
+    private int next() {
+        return cursor++ & (INPUT_SIZE - 1);
+    }
+
+    @Benchmark
+    public String select() {
+        return list.select(selectWeights[next()]);
+    }
+
+    /**
+     * Sets an entry to a new weight drawn from the same distribution, so the total weight stays about the same.
+     */
+    @Benchmark
+    public boolean update() {
+        int i = next();
+        int entry = entries[i];
+
+        weights[entry] = updateWeights[i];
+
+        return list.update(ids[entry], updateWeights[i]);
+    }
+
+    /**
+     * Inserts a new entry and removes it again, which keeps the size fixed.
+     */
+    @Benchmark
+    public boolean insertAndRemove() {
+        int i = next();
+
+        list.insert(freshIds[i], updateWeights[i]);
+
+        return list.remove(freshIds[i]);
+    }
+
+    /**
+     * Removes an existing entry from wherever it sits in the tree and inserts it back with the same weight.
+     */
+    @Benchmark
+    public void removeAndInsert() {
+        int entry = entries[next()];
+
+        list.remove(ids[entry]);
+        list.insert(ids[entry], weights[entry]);
+    }
+
+}
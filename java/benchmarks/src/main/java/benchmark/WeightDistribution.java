@@ -0,0 +1,42 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * How the benchmark weights are drawn. The ranges keep the total weight of 10M entries inside an int.
+ */
+public enum WeightDistribution {
+
+    /**
+     * Weights drawn uniformly from 1 to 200.
+     */
+    UNIFORM {
+        @Override
+        int weight(SplittableRandom random, int size) {
+            return random.nextInt(200) + 1;
+        }
+    },
+
+    /**
+     * Weights proportional to 1 / rank for a uniformly drawn rank, so a few entries carry most of the weight.
+     */
+    ZIPFIAN {
+        @Override
+        int weight(SplittableRandom random, int size) {
+            return Math.max(1, 10_000_000 / (random.nextInt(size) + 1));
+        }
+    },
+
+    /**
+     * Every weight is 100.
+     */
+    CONSTANT {
+        @Override
+        int weight(SplittableRandom random, int size) {
+            return 100;
+        }
+    };
+
+    abstract int weight(SplittableRandom random, int size);
+
+}
@@ -0,0 +1,18 @@
+package benchmark;
+
+/**
+ * The operations shared by the weight trees, so one benchmark can drive all of them.
+ */
+public interface WeightedList {
+
+    int weightSum();
+
+    String select(int weight);
+
+    void insert(String id, int weight);
+
+    boolean update(String id, int weight);
+
+    boolean remove(String id);
+
+}
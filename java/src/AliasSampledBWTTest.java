@@ -0,0 +1,185 @@
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class AliasSampledBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        aliasTableTest();
+        randomTest();
+        rejectedRebuildTest();
+    }
+
+    private static void aliasTableTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+
+        String[] ids = new String[200];
+        int[] weights = new int[ids.length];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "A" + i;
+            // Some zero weights, which must never be sampled.
+            weights[i] = i % 10 == 0 ? 0 : RANDOM.nextInt(100) + 1;
+
+            if (weights[i] > 0) {
+                weightMap.put(ids[i], weights[i]);
+            }
+        }
+
+        AliasTable table = new AliasTable(ids, weights, ids.length);
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(table.sample(RANDOM), 1, Integer::sum);
+        }
+
+        if (!weightMap.keySet().containsAll(selectionCounts.keySet())) {
+            throw new RuntimeException("Alias table sampled an id with zero weight!");
+        }
+
+        testCounts(weightMap, selectionCounts);
+
+        if (new AliasTable(new String[0], new int[0], 0).sample(RANDOM) != null) {
+            throw new RuntimeException("Empty alias table sampled an id!");
+        }
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+
+        // Builds run right away, so the table is up to date after every rebuild.
+        AliasSampledBalancedWeightTree tree = new AliasSampledBalancedWeightTree(new NonRecursiveBalancedWeightTree(), 16, Runnable::run);
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || ids.isEmpty()) {
+                String id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+            }
+            else if (rand == 1) {
+                String id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightMap.remove(id);
+                tree.remove(id);
+            }
+        }
+
+        System.out.println(weightMap.size() + " nodes with weight sum " + tree.weightSum());
+
+        // Samples from the tree while the table is stale, then from the rebuilt table.
+        testTree(weightMap, tree);
+
+        tree.rebuild();
+
+        testTree(weightMap, tree);
+    }
+
+    private static void rejectedRebuildTest() {
+        int[] attempts = { 0 };
+        int[] builds = { 0 };
+
+        Executor executor = task -> {
+            if (attempts[0]++ < 3) {
+                throw new RejectedExecutionException("Rejected for the test");
+            }
+
+            builds[0]++;
+            task.run();
+        };
+
+        AliasSampledBalancedWeightTree tree = new AliasSampledBalancedWeightTree(new NonRecursiveBalancedWeightTree(), 4, executor);
+
+        // Rejections of rebuilds started by mutations must not escape nor stop later rebuilds.
+        for (int i = 0; i < 40; i++) {
+            tree.insert("R" + i, i + 1);
+        }
+
+        if (attempts[0] <= 3 || builds[0] == 0) {
+            throw new RuntimeException("Rebuild was not tried again after a rejection!");
+        }
+
+        int[] rejectingAttempts = { 0 };
+
+        AliasSampledBalancedWeightTree rejected = new AliasSampledBalancedWeightTree(new NonRecursiveBalancedWeightTree(), 1000, task -> {
+            rejectingAttempts[0]++;
+
+            throw new RejectedExecutionException("Rejected for the test");
+        });
+
+        rejected.insert("A", 1);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                rejected.rebuild();
+
+                throw new RuntimeException("Rejected rebuild did not throw!");
+            } catch (RejectedExecutionException e) {
+                // expected, and the second call shows the rebuild was not left marked as running
+            }
+        }
+
+        if (rejectingAttempts[0] != 2) {
+            throw new RuntimeException("Rebuild was not tried again after a rejection!");
+        }
+
+        System.out.println("Rejected rebuild test passed");
+    }
+
+    private static void testTree(Map<String, Integer> weightMap, AliasSampledBalancedWeightTree tree) {
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(tree.sample(RANDOM), 1, Integer::sum);
+        }
+
+        testCounts(weightMap, selectionCounts);
+    }
+
+    private static void testCounts(Map<String, Integer> weightMap, Map<String, Integer> selectionCounts) {
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,161 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.random.RandomGenerator;
+
+/**
+ * NonRecursiveBalancedWeightTree with an alias table compiled from its contents for constant time sampling.
+ * Every insert, update and remove makes the table stale, and until a fresh one is ready sample falls back to the
+ * live tree. Once the mutations and fallback samples since the last rebuild cross the threshold, the entries are
+ * copied and a new table is built on the executor. Counting the fallback samples makes the table catch up once the
+ * tree goes quiet even if the last burst of mutations stayed under the threshold.
+ * Like the tree itself this class is meant to be used from a single thread. Only the table build runs elsewhere.
+ */
+public class AliasSampledBalancedWeightTree implements WeightTree {
+
+    private static final class Compiled {
+
+        final AliasTable table;
+        final long mutationCount;
+
+        private Compiled(AliasTable table, long mutationCount) {
+            this.table = table;
+            this.mutationCount = mutationCount;
+        }
+
+    }
+
+    private final NonRecursiveBalancedWeightTree tree;
+
+    private final int rebuildThreshold;
+    private final Executor executor;
+
+    private long mutationCount = 0;
+    private long staleCount = 0;
+
+    private volatile boolean rebuilding = false;
+
+    private volatile Compiled compiled = null;
+
+    public AliasSampledBalancedWeightTree(int rebuildThreshold) {
+        this(new NonRecursiveBalancedWeightTree(), rebuildThreshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Takes ownership of the tree, for example one made by NonRecursiveBalancedWeightTree.build.
+     */
+    public AliasSampledBalancedWeightTree(NonRecursiveBalancedWeightTree tree, int rebuildThreshold, Executor executor) {
+        this.tree = tree;
+        this.rebuildThreshold = rebuildThreshold;
+        this.executor = executor;
+    }
+
+    public int weightSum() {
+        return tree.weightSum();
+    }
+
+    public String select(int weight) {
+        return tree.select(weight);
+    }
+
+    public TreeStatistics statistics() {
+        return tree.statistics();
+    }
+
+    public void forEach(WeightConsumer consumer) {
+        tree.forEach(consumer);
+    }
+
+    /**
+     * Returns an id with probability proportional to its weight from the alias table when it is up to date with
+     * the tree, otherwise from the tree. Returns null if the weight sum is zero.
+     */
+    public String sample(RandomGenerator random) {
+        Compiled compiled = this.compiled;
+
+        if (compiled != null && compiled.mutationCount == mutationCount) {
+            return compiled.table.sample(random);
+        }
+
+        rebuildIfDue();
+
+        int weightSum = tree.weightSum();
+
+        return weightSum == 0 ? null : tree.select(random.nextInt(weightSum));
+    }
+
+    public void insert(String id, int weight) {
+        tree.insert(id, weight);
+
+        mutated();
+    }
+
+    public boolean remove(String id) {
+        if (!tree.remove(id)) {
+            return false;
+        }
+
+        mutated();
+
+        return true;
+    }
+
+    public boolean update(String id, int weight) {
+        if (!tree.update(id, weight)) {
+            return false;
+        }
+
+        mutated();
+
+        return true;
+    }
+
+    private void mutated() {
+        mutationCount++;
+
+        rebuildIfDue();
+    }
+
+    private void rebuildIfDue() {
+        if (++staleCount >= rebuildThreshold && !rebuilding) {
+            try {
+                rebuild();
+            } catch (RejectedExecutionException e) {
+                // Sampling stays correct on the tree, and the rebuild is tried again after another threshold.
+            }
+        }
+    }
+
+    /**
+     * Copies the current entries and builds a new alias table from them on the executor.
+     * If the executor rejects the build, the exception is passed on and a later rebuild may be tried.
+     */
+    public void rebuild() {
+        int size = tree.size();
+
+        String[] ids = new String[size];
+        int[] weights = new int[size];
+
+        tree.entries(ids, weights);
+
+        long version = mutationCount;
+
+        staleCount = 0;
+        rebuilding = true;
+
+        try {
+            executor.execute(() -> {
+                try {
+                    compiled = new Compiled(new AliasTable(ids, weights, size), version);
+                } finally {
+                    rebuilding = false;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuilding = false;
+
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Immutable Vose alias table for constant time weighted sampling of a fixed set of ids.
+ * The table is built with integer arithmetic: every column holds weightSum units, of which the first threshold
+ * units belong to the column's own id and the rest to its alias, so the sampling probabilities are exact.
+ */
+public final class AliasTable {
+
+    private final String[] ids;
+
+    private final long[] thresholds;
+    private final int[] aliases;
+
+    private final long weightSum;
+
+    /**
+     * Builds the table from the first count ids and weights. The arrays are kept, not copied.
+     */
+    public AliasTable(String[] ids, int[] weights, int count) {
+        this.ids = ids;
+
+        thresholds = new long[count];
+        aliases = new int[count];
+
+        long weightSum = 0;
+
+        for (int i = 0; i < count; i++) {
+            weightSum += weights[i];
+        }
+
+        this.weightSum = weightSum;
+
+        int[] small = new int[count];
+        int[] large = new int[count];
+
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            thresholds[i] = (long) weights[i] * count;
+
+            if (thresholds[i] < weightSum) {
+                small[smallCount++] = i;
+            }
+            else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            aliases[less] = more;
+
+            thresholds[more] -= weightSum - thresholds[less];
+
+            if (thresholds[more] < weightSum) {
+                small[smallCount++] = more;
+            }
+            else {
+                large[largeCount++] = more;
+            }
+        }
+
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+
+            thresholds[index] = weightSum;
+            aliases[index] = index;
+        }
+
+        while (smallCount > 0) {
+            int index = small[--smallCount];
+
+            thresholds[index] = weightSum;
+            aliases[index] = index;
+        }
+    }
+
+    public long weightSum() {
+        return weightSum;
+    }
+
+    /**
+     * Returns an id with probability proportional to its weight, or null if the weight sum is zero.
+     */
+    public String sample(RandomGenerator random) {
+        if (weightSum == 0) {
+            return null;
+        }
+
+        int column = random.nextInt(thresholds.length);
+
+        return random.nextLong(weightSum) < thresholds[column] ? ids[column] : ids[aliases[column]];
+    }
+
+}
@@ -0,0 +1,134 @@
+import java.util.*;
+
+public class ArrayBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        Map<String, Integer> handleMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        ArrayBalancedWeightTree tree = new ArrayBalancedWeightTree();
+
+        int weightSum = 0;
+
+        String id = UUID.randomUUID().toString().substring(0, 4);
+        int weight = RANDOM.nextInt(100) + 1;
+        weightSum += weight;
+
+        weightMap.put(id, weight);
+        ids.add(id);
+        handleMap.put(id, tree.insert(id, weight));
+
+        int nodeCount = 1;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1) {
+                id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                handleMap.put(id, tree.insert(id, weight));
+
+                nodeCount++;
+            }
+            else if (rand == 1 && nodeCount > 0) {
+                id = ids.get(RANDOM.nextInt(ids.size()));
+                weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+
+                if (RANDOM.nextBoolean()) {
+                    tree.update(id, weight);
+                }
+                else {
+                    tree.update(handleMap.get(id), weight);
+                }
+            } else if (nodeCount > 0) {
+                id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+
+                int handle = handleMap.remove(id);
+
+                if (RANDOM.nextBoolean()) {
+                    tree.remove(id);
+                }
+                else {
+                    tree.remove(handle);
+                }
+
+                if (tree.update(handle, 1)) {
+                    throw new RuntimeException("Removed handle still in use!");
+                }
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        if (nodeCount != tree.size()) {
+            throw new RuntimeException("Size does not match!");
+        }
+
+        for (String handleId: handleMap.keySet()) {
+            if (tree.handle(handleId) != handleMap.get(handleId)) {
+                throw new RuntimeException("Handle does not match!");
+            }
+        }
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    private static void testTree(Map<String, Integer> weightMap, int weightSum, ArrayBalancedWeightTree tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            int r = RANDOM.nextInt(weightSum);
+
+            String selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,497 @@
+import java.util.Arrays;
+
+/**
+ * ContractedBalancedWeightTree but the nodes are kept in growable primitive arrays instead of a map of node objects.
+ * Slots freed by remove are reused through a free-list and the id index is an open-addressing table of handles.
+ * Slot 0 is the null node and all its fields stay zero, so missing children can be read without checks.
+ * <p>
+ * Since promote, demote and pull up move entries between slots, every entry also gets a handle that stays fixed
+ * for as long as the entry is in the tree. Two indirection arrays map handles to slots and back and are kept in sync
+ * whenever an entry moves. Insert returns the handle, and update and remove by handle go straight to the slot
+ * without a hash lookup. Handles of removed entries are reused by later inserts, just like slots.
+ */
+public class ArrayBalancedWeightTree {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int[] weights = new int[INITIAL_CAPACITY];
+    private int[] weightSums = new int[INITIAL_CAPACITY];
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] leftChildren = new int[INITIAL_CAPACITY];
+    private int[] rightChildren = new int[INITIAL_CAPACITY];
+
+    private boolean[] isLeftChild = new boolean[INITIAL_CAPACITY];
+
+    private int[] handles = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY];
+
+    private int counter = 0;
+    private int freeSlot = 0;
+    private int size = 0;
+
+    private int handleCounter = 0;
+    private int freeHandle = 0;
+
+    private int root = 0;
+
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    private final TreeStatistics statistics = new TreeStatistics();
+
+    public int weightSum() {
+        return weightSums[root];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    public String select(int weight) {
+        if (root == 0) {
+            return null;
+        }
+
+        int probe = root;
+
+        while (true) {
+            int leftWeightSum = weightSums[leftChildren[probe]];
+
+            if (leftWeightSum > weight) {
+                probe = leftChildren[probe];
+                continue;
+            }
+
+            weight -= leftWeightSum;
+
+            if (weights[probe] > weight) {
+                return ids[probe];
+            }
+
+            weight -= weights[probe];
+
+            if (weightSums[rightChildren[probe]] > weight) {
+                probe = rightChildren[probe];
+            }
+            else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of the new entry, which is never 0.
+     */
+    public int insert(String id, int weight) {
+        int node = allocate();
+        int handle = allocateHandle();
+
+        handles[node] = handle;
+        slots[handle] = node;
+
+        ids[node] = id;
+        weights[node] = weight;
+        weightSums[node] = weight;
+
+        index(handle);
+
+        if (root == 0) {
+            root = node;
+
+            statistics.inserted(0, weight);
+            return handle;
+        }
+
+        int depth = 1;
+
+        int probe = root;
+
+        while (true) {
+            weightSums[probe] += weight;
+
+            if (leftChildren[probe] == 0) {
+                isLeftChild[node] = true;
+                parents[node] = probe;
+
+                leftChildren[probe] = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return handle;
+            }
+            else if (rightChildren[probe] == 0) {
+                isLeftChild[node] = false;
+                parents[node] = probe;
+
+                rightChildren[probe] = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return handle;
+            }
+            else if (weightSums[leftChildren[probe]] > weightSums[rightChildren[probe]]) {
+                probe = rightChildren[probe];
+            }
+            else {
+                probe = leftChildren[probe];
+            }
+
+            depth++;
+        }
+    }
+
+    private void promote(int node) {
+        int probe = node;
+
+        while (parents[probe] != 0 && weights[probe] > weights[parents[probe]]) {
+            statistics.promoteSwapped(weights[probe], weights[parents[probe]]);
+
+            swap(parents[probe], probe);
+
+            probe = parents[probe];
+        }
+    }
+
+    /**
+     * Returns the handle of the entry with the id, or 0 if there is none.
+     */
+    public int handle(String id) {
+        int position = find(id);
+
+        return position < 0 ? 0 : index[position];
+    }
+
+    public boolean remove(String id) {
+        return remove(handle(id));
+    }
+
+    /**
+     * Returns false if the handle does not belong to an entry in the tree.
+     */
+    public boolean remove(int handle) {
+        if (!isLive(handle)) {
+            return false;
+        }
+
+        int node = slots[handle];
+
+        unindex(positionOf(handle));
+        releaseHandle(handle);
+
+        int depth = 0;
+
+        int probe = node;
+
+        while (parents[probe] != 0) {
+            weightSums[parents[probe]] -= weights[node];
+
+            probe = parents[probe];
+
+            depth++;
+        }
+
+        statistics.removed(depth, weights[node]);
+
+        pullUp(node, depth);
+
+        return true;
+    }
+
+    private void pullUp(int node, int depth) {
+        int probe = node;
+
+        while (true) {
+            int child;
+
+            if (leftChildren[probe] == 0) {
+                if (rightChildren[probe] == 0) {
+                    if (parents[probe] == 0) {
+                        root = 0;
+                    }
+                    else if (isLeftChild[probe]) {
+                        leftChildren[parents[probe]] = 0;
+                    }
+                    else {
+                        rightChildren[parents[probe]] = 0;
+                    }
+
+                    statistics.cut(depth);
+
+                    release(probe);
+                    return;
+                }
+
+                child = rightChildren[probe];
+            }
+            else if (rightChildren[probe] == 0 || weights[leftChildren[probe]] > weights[rightChildren[probe]]) {
+                child = leftChildren[probe];
+            }
+            else {
+                child = rightChildren[probe];
+            }
+
+            handles[probe] = handles[child];
+            slots[handles[probe]] = probe;
+
+            ids[probe] = ids[child];
+            weights[probe] = weights[child];
+            weightSums[probe] = weightSums[leftChildren[probe]] + weightSums[rightChildren[probe]];
+
+            statistics.pulledUp(weights[probe]);
+
+            probe = child;
+
+            depth++;
+        }
+    }
+
+    public boolean update(String id, int weight) {
+        return update(handle(id), weight);
+    }
+
+    /**
+     * Returns false if the handle does not belong to an entry in the tree.
+     */
+    public boolean update(int handle, int weight) {
+        if (!isLive(handle)) {
+            return false;
+        }
+
+        int node = slots[handle];
+
+        int weightDiff = weight - weights[node];
+
+        weights[node] = weight;
+        weightSums[node] += weightDiff;
+
+        int depth = 0;
+
+        int probe = node;
+
+        while (parents[probe] != 0) {
+            weightSums[parents[probe]] += weightDiff;
+
+            probe = parents[probe];
+
+            depth++;
+        }
+
+        statistics.updated(depth, weightDiff);
+
+        if (weightDiff > 0) {
+            promote(node);
+        }
+        else {
+            demote(node);
+        }
+
+        return true;
+    }
+
+    private void demote(int node) {
+        int probe = node;
+
+        while (true) {
+            int child = weights[leftChildren[probe]] > weights[rightChildren[probe]] ? leftChildren[probe] : rightChildren[probe];
+
+            // A missing child resolves to slot 0 whose weight never beats a real node.
+            if (weights[child] <= weights[probe]) {
+                return;
+            }
+
+            statistics.demoteSwapped(weights[child], weights[probe]);
+
+            swap(probe, child);
+
+            probe = child;
+        }
+    }
+
+    private void swap(int parent, int child) {
+        int handle = handles[parent];
+        handles[parent] = handles[child];
+        handles[child] = handle;
+
+        slots[handles[parent]] = parent;
+        slots[handles[child]] = child;
+
+        String id = ids[parent];
+        ids[parent] = ids[child];
+        ids[child] = id;
+
+        int weight = weights[parent];
+        weights[parent] = weights[child];
+        weights[child] = weight;
+
+        weightSums[child] += weight - weights[parent];
+    }
+
+    private int allocate() {
+        size++;
+
+        if (freeSlot != 0) {
+            int slot = freeSlot;
+            freeSlot = parents[slot];
+            parents[slot] = 0;
+
+            return slot;
+        }
+
+        if (++counter == weights.length) {
+            grow(weights.length * 2);
+        }
+
+        return counter;
+    }
+
+    private void release(int slot) {
+        size--;
+
+        ids[slot] = null;
+        weights[slot] = 0;
+        weightSums[slot] = 0;
+
+        handles[slot] = 0;
+
+        leftChildren[slot] = 0;
+        rightChildren[slot] = 0;
+
+        parents[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        weightSums = Arrays.copyOf(weightSums, capacity);
+
+        parents = Arrays.copyOf(parents, capacity);
+        leftChildren = Arrays.copyOf(leftChildren, capacity);
+        rightChildren = Arrays.copyOf(rightChildren, capacity);
+
+        isLeftChild = Arrays.copyOf(isLeftChild, capacity);
+
+        handles = Arrays.copyOf(handles, capacity);
+    }
+
+    private boolean isLive(int handle) {
+        return handle > 0 && handle <= handleCounter && slots[handle] > 0;
+    }
+
+    private int allocateHandle() {
+        if (freeHandle != 0) {
+            int handle = freeHandle;
+            freeHandle = ~slots[handle];
+
+            return handle;
+        }
+
+        if (++handleCounter == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+
+        return handleCounter;
+    }
+
+    /**
+     * Free handles are chained through their slot cells stored complemented, so a negative cell marks a dead handle.
+     */
+    private void releaseHandle(int handle) {
+        slots[handle] = ~freeHandle;
+        freeHandle = handle;
+    }
+
+    private static int hash(String id) {
+        int hash = id.hashCode() * 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private int find(String id) {
+        int mask = index.length - 1;
+
+        for (int position = hash(id) & mask; ; position = (position + 1) & mask) {
+            if (index[position] == 0) {
+                return -1;
+            }
+
+            if (id.equals(ids[slots[index[position]]])) {
+                return position;
+            }
+        }
+    }
+
+    private int positionOf(int handle) {
+        int mask = index.length - 1;
+
+        int position = hash(ids[slots[handle]]) & mask;
+
+        while (index[position] != handle) {
+            position = (position + 1) & mask;
+        }
+
+        return position;
+    }
+
+    private void index(int handle) {
+        if (size * 2 > index.length) {
+            int[] oldIndex = index;
+
+            index = new int[oldIndex.length * 2];
+
+            for (int oldHandle: oldIndex) {
+                if (oldHandle != 0) {
+                    place(oldHandle);
+                }
+            }
+        }
+
+        place(handle);
+    }
+
+    private void place(int handle) {
+        int mask = index.length - 1;
+
+        int position = hash(ids[slots[handle]]) & mask;
+
+        while (index[position] != 0) {
+            position = (position + 1) & mask;
+        }
+
+        index[position] = handle;
+    }
+
+    private void unindex(int position) {
+        int mask = index.length - 1;
+
+        int hole = position;
+        int probe = position;
+
+        while (true) {
+            probe = (probe + 1) & mask;
+
+            int handle = index[probe];
+
+            if (handle == 0) {
+                break;
+            }
+
+            int home = hash(ids[slots[handle]]) & mask;
+
+            if (((probe - home) & mask) >= ((probe - hole) & mask)) {
+                index[hole] = handle;
+                hole = probe;
+            }
+        }
+
+        index[hole] = 0;
+    }
+
+}
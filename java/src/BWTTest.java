@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class BWTTest {
 
@@ -9,6 +10,8 @@ public class BWTTest {
     public static void main(String... args) {
 //        basicTest();
         randomTest();
+        buildTest();
+        buildParallelTest();
     }
 
     private static void basicTest() {
@@ -118,11 +121,85 @@ public class BWTTest {
 
         System.out.println(nodeCount + " nodes with weight sum " + weightSum + " and depth is " + depth(weightMap, tree));
 
+        System.out.println(tree.statistics());
+
+        if (tree.statistics().maxDepth() + 1 != depth(weightMap, tree)) {
+            throw new RuntimeException("Statistics depth does not match!");
+        }
+
         tree.verify();
 
         testTree(weightMap, weightSum, tree);
     }
 
+    private static void buildTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+
+        int weightSum = 0;
+
+        for (int i = 0; i < 200; i++) {
+            String id = UUID.randomUUID().toString().substring(0, 8);
+            int weight = RANDOM.nextInt(100) + 1;
+
+            weightSum += weight - weightMap.getOrDefault(id, 0);
+
+            weightMap.put(id, weight);
+        }
+
+        BalancedWeightTree tree = BalancedWeightTree.build(weightMap);
+
+        System.out.println(weightMap.size() + " nodes built with weight sum " + weightSum + " and depth is " + depth(weightMap, tree));
+
+        tree.verify();
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    private static void buildParallelTest() {
+        String[] ids = new String[100_000];
+        int[] weights = new int[ids.length];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "P" + i;
+            weights[i] = RANDOM.nextInt(100) + 1;
+        }
+
+        BalancedWeightTree tree = BalancedWeightTree.build(ids, weights);
+        BalancedWeightTree parallelTree = BalancedWeightTree.buildParallel(ids, weights, new ForkJoinPool(4));
+
+        parallelTree.verify();
+
+        if (!tree.statistics().toString().equals(parallelTree.statistics().toString())) {
+            throw new RuntimeException("Parallel build statistics do not match!");
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            String id = ids[RANDOM.nextInt(ids.length)];
+            int weight = RANDOM.nextInt(100) + 1;
+
+            if (RANDOM.nextInt(4) == 0) {
+                tree.remove(id);
+                parallelTree.remove(id);
+            }
+            else {
+                tree.update(id, weight);
+                parallelTree.update(id, weight);
+            }
+        }
+
+        parallelTree.verify();
+
+        for (int i = 0; i < 100_000; i++) {
+            int weight = RANDOM.nextInt(tree.weightSum() + 10);
+
+            if (!Objects.equals(tree.select(weight), parallelTree.select(weight))) {
+                throw new RuntimeException("Parallel build does not match!");
+            }
+        }
+
+        System.out.println("Parallel build test passed");
+    }
+
     private static void testTree(Map<String, Integer> weightMap, int weightSum, BalancedWeightTree tree) {
         if (weightSum != tree.weightSum()) {
             throw new RuntimeException("Weight sum do not match!");
@@ -156,6 +233,76 @@ public class BWTTest {
         }
 
         System.out.println("Random selection test passed with error " + error + "%");
+
+        for (String id: weightMap.keySet()) {
+            int cumulativeWeight = tree.cumulativeWeightBefore(id);
+
+            if (!id.equals(tree.select(cumulativeWeight)) || !id.equals(tree.select(cumulativeWeight + weightMap.get(id) - 1))) {
+                throw new RuntimeException("Cumulative weight does not match!");
+            }
+
+            if (tree.probability(id) != weightMap.get(id).doubleValue() / weightSum) {
+                throw new RuntimeException("Probability does not match!");
+            }
+        }
+
+        if (tree.cumulativeWeightBefore("missing") != -1 || tree.probability("missing") != 0) {
+            throw new RuntimeException("Missing id has a cumulative weight!");
+        }
+
+        int[] weights = new int[256];
+
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = RANDOM.nextInt(weightSum + 10);
+        }
+
+        String[] ids = new String[weights.length];
+
+        tree.select(weights, ids);
+
+        for (int i = 0; i < weights.length; i++) {
+            if (!Objects.equals(ids[i], tree.select(weights[i]))) {
+                throw new RuntimeException("Batch selection did not match single selection!");
+            }
+        }
+
+        System.out.println("Batch selection test passed");
+
+        Map<String, Integer> visited = new HashMap<>();
+
+        tree.forEach((id, weight) -> {
+            if (visited.put(id, weight) != null) {
+                throw new RuntimeException("Entry visited twice!");
+            }
+        });
+
+        if (!visited.equals(weightMap)) {
+            throw new RuntimeException("Iterated entries do not match!");
+        }
+
+        System.out.println("Iteration test passed");
+
+        FrozenWeightTree frozen = tree.freeze();
+
+        Map<String, Integer> frozenCounts = new HashMap<>();
+
+        for (int w = 0; w < weightSum; w++) {
+            frozenCounts.merge(frozen.select(w), 1, Integer::sum);
+        }
+
+        if (!frozenCounts.equals(weightMap) || frozen.select(weightSum) != null) {
+            throw new RuntimeException("Frozen tree does not match!");
+        }
+
+        frozen.select(weights, ids);
+
+        for (int i = 0; i < weights.length; i++) {
+            if (!Objects.equals(ids[i], frozen.select(weights[i]))) {
+                throw new RuntimeException("Frozen batch selection did not match single selection!");
+            }
+        }
+
+        System.out.println("Frozen tree test passed");
     }
 
     private static int depth(Map<String, Integer> weightMap, BalancedWeightTree tree) {
@@ -1,10 +1,13 @@
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * This is the original algorithm which contains debug functions like print.
  */
-public class BalancedWeightTree {
+public class BalancedWeightTree implements WeightTree {
 
     private static class Node {
 
@@ -33,14 +36,233 @@ public class BalancedWeightTree {
 
     }
 
+    /**
+     * Creates and links the nodes of the subtree of a heap position, children before their parent, and returns the
+     * sum of the weight sums of all its nodes, which is the weighted depth the statistics need.
+     */
+    private static final class LinkTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] ids;
+        private final int[] weights;
+        private final int[] order;
+
+        private final Node[] nodes;
+
+        private final int position;
+
+        private LinkTask(String[] ids, int[] weights, int[] order, Node[] nodes, int position) {
+            this.ids = ids;
+            this.weights = weights;
+            this.order = order;
+
+            this.nodes = nodes;
+
+            this.position = position;
+        }
+
+        @Override
+        protected Long compute() {
+            if (HeapLayout.subtreeSize(position, order.length) < HeapLayout.PARALLEL_THRESHOLD) {
+                return link(position);
+            }
+
+            LinkTask left = new LinkTask(ids, weights, order, nodes, 2 * position + 1);
+            left.fork();
+
+            long weightSums = new LinkTask(ids, weights, order, nodes, 2 * position + 2).compute();
+
+            weightSums += left.join();
+
+            return weightSums + linkNode(position);
+        }
+
+        private long link(int position) {
+            if (position >= order.length) {
+                return 0;
+            }
+
+            long weightSums = link(2 * position + 1) + link(2 * position + 2);
+
+            return weightSums + linkNode(position);
+        }
+
+        private int linkNode(int position) {
+            Node node = new Node(ids[order[position]], weights[order[position]]);
+            node.depth = 31 - Integer.numberOfLeadingZeros(position + 1);
+
+            int leftPosition = 2 * position + 1;
+
+            if (leftPosition < nodes.length) {
+                node.leftChild = nodes[leftPosition];
+                node.leftChild.parent = node;
+                node.leftChild.isLeftChild = true;
+                node.leftWeightSum = node.leftChild.weightSum;
+            }
+
+            if (leftPosition + 1 < nodes.length) {
+                node.rightChild = nodes[leftPosition + 1];
+                node.rightChild.parent = node;
+                node.rightWeightSum = node.rightChild.weightSum;
+            }
+
+            node.weightSum = node.leftWeightSum + node.weight + node.rightWeightSum;
+
+            nodes[position] = node;
+
+            return node.weightSum;
+        }
+
+    }
+
     private Node root = null;
 
     private Map<String, Node> nodeMap = new HashMap<>();
 
+    private final TreeStatistics statistics = new TreeStatistics();
+
+    /**
+     * Builds a tree from the weight map without going through insert.
+     * The entries are laid out as a complete heap-ordered tree and the weight sums are filled in bottom-up.
+     */
+    public static BalancedWeightTree build(Map<String, Integer> weightMap) {
+        String[] ids = new String[weightMap.size()];
+        int[] weights = new int[weightMap.size()];
+
+        int i = 0;
+
+        for (Map.Entry<String, Integer> entry: weightMap.entrySet()) {
+            ids[i] = entry.getKey();
+            weights[i] = entry.getValue();
+
+            i++;
+        }
+
+        return build(ids, weights);
+    }
+
+    /**
+     * Same as build(Map) for parallel arrays of ids and weights. The uniqueness of the ids is not checked.
+     */
+    public static BalancedWeightTree build(String[] ids, int[] weights) {
+        BalancedWeightTree tree = new BalancedWeightTree();
+
+        int[] order = HeapLayout.arrange(weights);
+
+        Node[] nodes = new Node[order.length];
+
+        tree.nodeMap = new HashMap<>((int) (order.length / 0.75f) + 1);
+
+        for (int i = 0; i < order.length; i++) {
+            nodes[i] = new Node(ids[order[i]], weights[order[i]]);
+            nodes[i].depth = 31 - Integer.numberOfLeadingZeros(i + 1);
+
+            tree.nodeMap.put(nodes[i].id, nodes[i]);
+            tree.statistics.placed(nodes[i].depth, nodes[i].weight);
+        }
+
+        for (int i = order.length - 1; i > 0; i--) {
+            Node node = nodes[i];
+            Node parent = nodes[(i - 1) / 2];
+
+            node.weightSum = node.leftWeightSum + node.weight + node.rightWeightSum;
+            node.parent = parent;
+            node.isLeftChild = i % 2 == 1;
+
+            if (node.isLeftChild) {
+                parent.leftChild = node;
+                parent.leftWeightSum = node.weightSum;
+            }
+            else {
+                parent.rightChild = node;
+                parent.rightWeightSum = node.weightSum;
+            }
+        }
+
+        if (nodes.length > 0) {
+            tree.root = nodes[0];
+            tree.root.weightSum = tree.root.leftWeightSum + tree.root.weight + tree.root.rightWeightSum;
+        }
+
+        return tree;
+    }
+
+    /**
+     * Same as build(String[], int[]) but the heap is arranged and the nodes are created and linked on the pool,
+     * one subtree per task. The node map is filled afterwards on the calling thread, so the tree keeps a plain
+     * HashMap for later inserts, updates and removes at the cost of one sequential pass over the nodes.
+     */
+    public static BalancedWeightTree buildParallel(String[] ids, int[] weights, ForkJoinPool pool) {
+        BalancedWeightTree tree = new BalancedWeightTree();
+
+        int[] order = HeapLayout.arrangeParallel(weights, pool);
+
+        Node[] nodes = new Node[order.length];
+
+        if (nodes.length == 0) {
+            return tree;
+        }
+
+        long weightedProbeLengthSum = pool.invoke(new LinkTask(ids, weights, order, nodes, 0));
+
+        tree.root = nodes[0];
+
+        tree.nodeMap = new HashMap<>((int) (nodes.length / 0.75f) + 1);
+
+        for (Node node: nodes) {
+            tree.nodeMap.put(node.id, node);
+        }
+
+        int[] depthCounts = new int[32 - Integer.numberOfLeadingZeros(nodes.length)];
+
+        for (int depth = 0; depth < depthCounts.length; depth++) {
+            depthCounts[depth] = Math.min(1 << depth, nodes.length - ((1 << depth) - 1));
+        }
+
+        tree.statistics.placed(depthCounts, tree.root.weightSum, weightedProbeLengthSum);
+
+        return tree;
+    }
+
+    public static BalancedWeightTree buildParallel(String[] ids, int[] weights) {
+        return buildParallel(ids, weights, ForkJoinPool.commonPool());
+    }
+
     public int weightSum() {
         return root == null ? 0 : root.weightSum;
     }
 
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Walks the tree in pre-order along the parent pointers, so neither a stack nor an iterator is allocated.
+     */
+    public void forEach(WeightConsumer consumer) {
+        Node probe = root;
+
+        while (probe != null) {
+            consumer.accept(probe.id, probe.weight);
+
+            if (probe.leftChild != null) {
+                probe = probe.leftChild;
+            }
+            else if (probe.rightChild != null) {
+                probe = probe.rightChild;
+            }
+            else {
+                // Climb until the probe is a left child with a right sibling, which is the next subtree to walk.
+                while (probe.parent != null && (!probe.isLeftChild || probe.parent.rightChild == null)) {
+                    probe = probe.parent;
+                }
+
+                probe = probe.parent == null ? null : probe.parent.rightChild;
+            }
+        }
+    }
+
     public String select(int weight) {
         if (root == null) {
             return null;
@@ -71,10 +293,115 @@ public class BalancedWeightTree {
         }
     }
 
+    /**
+     * Selects the ids for all the weights at once. The weights are sorted and the tree is descended once,
+     * splitting the weights at each node into the left subtree, the node itself and the right subtree.
+     * The id for weights[i] is put in ids[i], or null if it is equal or greater than the weight sum.
+     */
+    public void select(int[] weights, String[] ids) {
+        long[] order = new long[weights.length];
+
+        for (int i = 0; i < weights.length; i++) {
+            order[i] = ((long) weights[i] << 32) | i;
+        }
+
+        Arrays.sort(order);
+
+        int end = root == null ? 0 : select(root, 0, order, 0, order.length, ids);
+
+        for (int i = end; i < order.length; i++) {
+            ids[(int) order[i]] = null;
+        }
+    }
+
+    private int select(Node node, int offset, long[] order, int from, int to, String[] ids) {
+        int leftEnd = split(order, from, to, offset + node.leftWeightSum);
+
+        if (leftEnd > from) {
+            select(node.leftChild, offset, order, from, leftEnd, ids);
+        }
+
+        offset += node.leftWeightSum;
+
+        int nodeEnd = split(order, leftEnd, to, offset + node.weight);
+
+        for (int i = leftEnd; i < nodeEnd; i++) {
+            ids[(int) order[i]] = node.id;
+        }
+
+        offset += node.weight;
+
+        int rightEnd = split(order, nodeEnd, to, offset + node.rightWeightSum);
+
+        if (rightEnd > nodeEnd) {
+            select(node.rightChild, offset, order, nodeEnd, rightEnd, ids);
+        }
+
+        return rightEnd;
+    }
+
+    private static int split(long[] order, int from, int to, int weight) {
+        long bound = (long) weight << 32;
+
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+
+            if (order[middle] < bound) {
+                from = middle + 1;
+            }
+            else {
+                to = middle;
+            }
+        }
+
+        return from;
+    }
+
     public int depth(String id) {
         return nodeMap.get(id).depth;
     }
 
+    /**
+     * Returns the smallest weight for which select returns the id, which is the sum of the weights of all the
+     * entries before it in select order, or -1 if there is no entry with the id.
+     * Walks up from the node and adds the left weight sum and the weight of every ancestor it is on the right of.
+     */
+    public int cumulativeWeightBefore(String id) {
+        Node node = nodeMap.get(id);
+
+        if (node == null) {
+            return -1;
+        }
+
+        int weight = node.leftWeightSum;
+
+        Node probe = node;
+
+        while (probe.parent != null) {
+            if (!probe.isLeftChild) {
+                weight += probe.parent.leftWeightSum + probe.parent.weight;
+            }
+
+            probe = probe.parent;
+        }
+
+        return weight;
+    }
+
+    /**
+     * Returns the probability that select returns the id for a uniformly drawn weight, or 0 if there is no entry
+     * with the id.
+     */
+    public double probability(String id) {
+        Node node = nodeMap.get(id);
+
+        if (node == null || root.weightSum == 0) {
+            return 0;
+        }
+
+        return (double) node.weight / root.weightSum;
+    }
+
     public void insert(String id, int weight) {
         Node node = new Node(id, weight);
         nodeMap.put(id, node);
@@ -82,6 +409,8 @@ public class BalancedWeightTree {
         if (root == null) {
             root = node;
             root.depth = 0;
+
+            statistics.inserted(0, weight);
             return;
         }
 
@@ -101,6 +430,8 @@ public class BalancedWeightTree {
 
                 node.depth = depth;
 
+                statistics.inserted(depth, weight);
+
                 promote(node);
                 return;
             }
@@ -113,6 +444,8 @@ public class BalancedWeightTree {
 
                 node.depth = depth;
 
+                statistics.inserted(depth, weight);
+
                 promote(node);
                 return;
             }
@@ -131,6 +464,8 @@ public class BalancedWeightTree {
 
     private void promote(Node node) {
         if (node.parent != null && node.weight > node.parent.weight) {
+            statistics.promoteSwapped(node.weight, node.parent.weight);
+
             String id = node.id;
             node.id = node.parent.id;
             node.parent.id = id;
@@ -177,6 +512,8 @@ public class BalancedWeightTree {
             probe = probe.parent;
         }
 
+        statistics.removed(node.depth, node.weight);
+
         remove(node);
 
         return true;
@@ -194,6 +531,8 @@ public class BalancedWeightTree {
                 else {
                     node.parent.rightChild = null;
                 }
+
+                statistics.cut(node.depth);
             }
             else {
                 node.id = node.rightChild.id;
@@ -203,6 +542,8 @@ public class BalancedWeightTree {
                 node.rightWeightSum -= node.weight;
                 node.weightSum = node.leftWeightSum + node.weight + node.rightWeightSum;
 
+                statistics.pulledUp(node.weight);
+
                 remove(node.rightChild);
             }
         }
@@ -214,6 +555,8 @@ public class BalancedWeightTree {
             node.leftWeightSum -= node.weight;
             node.weightSum = node.leftWeightSum + node.weight + node.rightWeightSum;
 
+            statistics.pulledUp(node.weight);
+
             remove(node.leftChild);
         }
         else if (node.leftChild.weight > node.rightChild.weight) {
@@ -224,6 +567,8 @@ public class BalancedWeightTree {
             node.leftWeightSum -= node.weight;
             node.weightSum = node.leftWeightSum + node.weight + node.rightWeightSum;
 
+            statistics.pulledUp(node.weight);
+
             remove(node.leftChild);
         }
         else {
@@ -234,6 +579,8 @@ public class BalancedWeightTree {
             node.rightWeightSum -= node.weight;
             node.weightSum = node.leftWeightSum + node.weight + node.rightWeightSum;
 
+            statistics.pulledUp(node.weight);
+
             remove(node.rightChild);
         }
     }
@@ -265,6 +612,8 @@ public class BalancedWeightTree {
             probe = probe.parent;
         }
 
+        statistics.updated(node.depth, weightDiff);
+
         if (weightDiff > 0) {
             promote(node);
         }
@@ -280,6 +629,8 @@ public class BalancedWeightTree {
             if (node.rightChild != null) {
                 if (node.leftChild.weight > node.rightChild.weight) {
                     if (node.leftChild.weight > node.weight) {
+                        statistics.demoteSwapped(node.leftChild.weight, node.weight);
+
                         String id = node.id;
                         node.id = node.leftChild.id;
                         node.leftChild.id = id;
@@ -298,6 +649,8 @@ public class BalancedWeightTree {
                     }
                 }
                 else if (node.rightChild.weight > node.weight) {
+                    statistics.demoteSwapped(node.rightChild.weight, node.weight);
+
                     String id = node.id;
                     node.id = node.rightChild.id;
                     node.rightChild.id = id;
@@ -316,6 +669,8 @@ public class BalancedWeightTree {
                 }
             }
             else if (node.leftChild.weight > node.weight) {
+                statistics.demoteSwapped(node.leftChild.weight, node.weight);
+
                 String id = node.id;
                 node.id = node.leftChild.id;
                 node.leftChild.id = id;
@@ -334,6 +689,8 @@ public class BalancedWeightTree {
             }
         }
         else if (node.rightChild != null && node.rightChild.weight > node.weight) {
+            statistics.demoteSwapped(node.rightChild.weight, node.weight);
+
             String id = node.id;
             node.id = node.rightChild.id;
             node.rightChild.id = id;
@@ -363,6 +720,10 @@ public class BalancedWeightTree {
             throw new RuntimeException("Weight sum did not match with weights in " + node.id);
         }
 
+        if (node.parent != null && node.weight > node.parent.weight) {
+            throw new RuntimeException("Weight is greater than the parent's weight in " + node.id);
+        }
+
         if (node.leftChild != null) {
             if (node.leftWeightSum != node.leftChild.weightSum) {
                 throw new RuntimeException("Left weights did not match in " + node.id);
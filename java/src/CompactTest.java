@@ -0,0 +1,122 @@
+import java.util.*;
+
+public class CompactTest {
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        cycleTest();
+    }
+
+    /**
+     * Grows the list past PROMOTE_SIZE and shrinks it below DEMOTE_SIZE a few times, with updates mixed in, and
+     * checks it against the map after every step. Half the ids start with "Aa" and half with "BB", which have the
+     * same hash, so the hash scan has to compare the strings to tell them apart.
+     */
+    private static void cycleTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        CompactWeightedList list = new CompactWeightedList();
+
+        int next = 0;
+
+        for (int cycle = 0; cycle < 5; cycle++) {
+            while (ids.size() <= CompactWeightedList.PROMOTE_SIZE + 16) {
+                String id = (next % 2 == 0 ? "Aa" : "BB") + next / 2;
+                int weight = RANDOM.nextInt(100) + 1;
+
+                next++;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                list.insert(id, weight);
+
+                testList(weightMap, list);
+
+                updateAny(weightMap, ids, list);
+            }
+
+            while (ids.size() >= CompactWeightedList.DEMOTE_SIZE - 16) {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightMap.remove(id);
+
+                if (!list.remove(id) || list.remove(id) || list.update(id, 1)) {
+                    throw new RuntimeException("Removed id is still in the list!");
+                }
+
+                testList(weightMap, list);
+
+                updateAny(weightMap, ids, list);
+            }
+        }
+
+        while (!ids.isEmpty()) {
+            String id = ids.remove(RANDOM.nextInt(ids.size()));
+            weightMap.remove(id);
+            list.remove(id);
+
+            testList(weightMap, list);
+        }
+
+        if (list.select(0) != null) {
+            throw new RuntimeException("Empty list selected an id!");
+        }
+
+        System.out.println("Cycle test passed");
+    }
+
+    private static void updateAny(Map<String, Integer> weightMap, List<String> ids, CompactWeightedList list) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        String id = ids.get(RANDOM.nextInt(ids.size()));
+        int weight = RANDOM.nextInt(100) + 1;
+
+        weightMap.put(id, weight);
+
+        if (!list.update(id, weight)) {
+            throw new RuntimeException("Update did not find " + id);
+        }
+
+        testList(weightMap, list);
+    }
+
+    /**
+     * Selects every weight from 0 to the weight sum once, so every id must come up exactly as often as its weight.
+     */
+    private static void testList(Map<String, Integer> weightMap, CompactWeightedList list) {
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        if (weightSum != list.weightSum() || weightMap.size() != list.size()) {
+            throw new RuntimeException("Weight sum or size do not match!");
+        }
+
+        Map<String, Integer> rangeCounts = new HashMap<>();
+
+        for (int w = 0; w < weightSum; w++) {
+            rangeCounts.merge(list.select(w), 1, Integer::sum);
+        }
+
+        if (!rangeCounts.equals(weightMap) || list.select(weightSum) != null) {
+            throw new RuntimeException("Weight ranges do not match at size " + list.size() + "!");
+        }
+
+        Map<String, Integer> entries = new HashMap<>();
+
+        list.forEach((id, weight) -> {
+            if (entries.put(id, weight) != null) {
+                throw new RuntimeException("Entry visited twice!");
+            }
+        });
+
+        if (!entries.equals(weightMap)) {
+            throw new RuntimeException("Entries do not match at size " + list.size() + "!");
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+import java.util.Arrays;
+
+/**
+ * Weighted list for the many lists that only ever hold a few entries, with the contract of
+ * NonRecursiveBalancedWeightTree. Up to PROMOTE_SIZE entries are kept in packed arrays of ids, id hashes and
+ * weights, so a small list costs three short arrays instead of a node per entry and a hash map. Ids are looked up
+ * by scanning the hashes, which does not touch the strings unless the hash matches, and select scans the weights.
+ * For a few dozen entries both scans stay within a handful of cache lines and beat a tree descent.
+ * <p>
+ * Past PROMOTE_SIZE entries the list moves into a NonRecursiveBalancedWeightTree, and when the tree shrinks below
+ * DEMOTE_SIZE it moves back. The gap between the two keeps a list whose size hovers around a bound from moving
+ * back and forth.
+ */
+public class CompactWeightedList implements WeightTree {
+
+    static final int PROMOTE_SIZE = 64;
+    static final int DEMOTE_SIZE = 32;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final String[] NO_IDS = {};
+    private static final int[] NO_INTS = {};
+
+    private String[] ids = NO_IDS;
+    private int[] hashes = NO_INTS;
+    private int[] weights = NO_INTS;
+
+    private int size = 0;
+
+    private int weightSum = 0;
+
+    // Holds the entries instead of the arrays while the list is large.
+    private NonRecursiveBalancedWeightTree tree = null;
+
+    public int weightSum() {
+        return tree == null ? weightSum : tree.weightSum();
+    }
+
+    public int size() {
+        return tree == null ? size : tree.size();
+    }
+
+    public void forEach(WeightConsumer consumer) {
+        if (tree != null) {
+            tree.forEach(consumer);
+            return;
+        }
+
+        for (int i = 0; i < size; i++) {
+            consumer.accept(ids[i], weights[i]);
+        }
+    }
+
+    public String select(int weight) {
+        if (tree != null) {
+            return tree.select(weight);
+        }
+
+        if (weight < 0 || weight >= weightSum) {
+            return null;
+        }
+
+        for (int i = 0; ; i++) {
+            weight -= weights[i];
+
+            if (weight < 0) {
+                return ids[i];
+            }
+        }
+    }
+
+    public void insert(String id, int weight) {
+        if (tree != null) {
+            tree.insert(id, weight);
+            return;
+        }
+
+        if (size == PROMOTE_SIZE) {
+            promote();
+
+            tree.insert(id, weight);
+            return;
+        }
+
+        if (size == ids.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+
+            ids = Arrays.copyOf(ids, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+
+        ids[size] = id;
+        hashes[size] = id.hashCode();
+        weights[size] = weight;
+
+        size++;
+
+        weightSum += weight;
+    }
+
+    public boolean remove(String id) {
+        if (tree != null) {
+            if (!tree.remove(id)) {
+                return false;
+            }
+
+            if (tree.size() < DEMOTE_SIZE) {
+                demote();
+            }
+
+            return true;
+        }
+
+        int index = indexOf(id);
+
+        if (index < 0) {
+            return false;
+        }
+
+        weightSum -= weights[index];
+
+        size--;
+
+        // The order of the entries does not matter, so the last one fills the hole.
+        ids[index] = ids[size];
+        hashes[index] = hashes[size];
+        weights[index] = weights[size];
+
+        ids[size] = null;
+
+        return true;
+    }
+
+    public boolean update(String id, int weight) {
+        if (tree != null) {
+            return tree.update(id, weight);
+        }
+
+        int index = indexOf(id);
+
+        if (index < 0) {
+            return false;
+        }
+
+        weightSum += weight - weights[index];
+
+        weights[index] = weight;
+
+        return true;
+    }
+
+    private int indexOf(String id) {
+        int hash = id.hashCode();
+
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash && ids[i].equals(id)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Moves the entries into a tree built in one pass and drops the arrays.
+     */
+    private void promote() {
+        tree = NonRecursiveBalancedWeightTree.build(Arrays.copyOf(ids, size), Arrays.copyOf(weights, size));
+
+        ids = NO_IDS;
+        hashes = NO_INTS;
+        weights = NO_INTS;
+
+        size = 0;
+        weightSum = 0;
+    }
+
+    /**
+     * Moves the entries of the tree back into arrays with room to grow to PROMOTE_SIZE without copying.
+     */
+    private void demote() {
+        NonRecursiveBalancedWeightTree tree = this.tree;
+
+        this.tree = null;
+
+        ids = new String[PROMOTE_SIZE];
+        hashes = new int[PROMOTE_SIZE];
+        weights = new int[PROMOTE_SIZE];
+
+        tree.forEach(this::insert);
+    }
+
+}
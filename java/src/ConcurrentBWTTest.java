@@ -0,0 +1,262 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final int WRITER_COUNT = 2;
+    private static final int READER_COUNT = 4;
+
+    private static final int WRITES_PER_WRITER = 200_000;
+
+    private static final int ID_RANGE = 100;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) throws InterruptedException {
+        randomTest();
+        concurrentTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        ConcurrentBalancedWeightTree tree = new ConcurrentBalancedWeightTree();
+
+        int weightSum = 0;
+
+        int nodeCount = 0;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || nodeCount == 0) {
+                String id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+
+                nodeCount++;
+            }
+            else if (rand == 1) {
+                String id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+                tree.remove(id);
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    /**
+     * Writers own disjoint id ranges and keep their own weight maps, while readers select with random weights the
+     * whole time. Readers may see any weight sum the writers went through, so they only check that every id they
+     * get was inserted at some point. At the end the tree must match the union of the writers' maps.
+     */
+    private static void concurrentTest() throws InterruptedException {
+        ConcurrentBalancedWeightTree tree = new ConcurrentBalancedWeightTree();
+
+        Set<String> everInserted = ConcurrentHashMap.newKeySet();
+
+        List<Map<String, Integer>> writerMaps = new ArrayList<>();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> writers = new ArrayList<>();
+
+        for (int w = 0; w < WRITER_COUNT; w++) {
+            Map<String, Integer> weightMap = new HashMap<>();
+            writerMaps.add(weightMap);
+
+            String prefix = "W" + w + "-";
+            Random random = new Random(RANDOM.nextLong());
+
+            writers.add(new Thread(() -> {
+                List<String> ids = new ArrayList<>();
+
+                for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                    int rand = random.nextInt(4);
+
+                    if (rand > 1 || ids.isEmpty()) {
+                        // A small id range keeps the final tree small enough for the selection error check.
+                        String id = prefix + random.nextInt(ID_RANGE);
+
+                        if (weightMap.containsKey(id)) {
+                            continue;
+                        }
+
+                        int weight = random.nextInt(100) + 1;
+
+                        everInserted.add(id);
+
+                        weightMap.put(id, weight);
+                        ids.add(id);
+                        tree.insert(id, weight);
+                    }
+                    else if (rand == 1) {
+                        String id = ids.get(random.nextInt(ids.size()));
+                        int weight = random.nextInt(100) + 1;
+
+                        weightMap.put(id, weight);
+                        tree.update(id, weight);
+                    }
+                    else {
+                        // Swap-remove keeps the removal constant time.
+                        int index = random.nextInt(ids.size());
+                        String id = ids.get(index);
+
+                        ids.set(index, ids.get(ids.size() - 1));
+                        ids.remove(ids.size() - 1);
+
+                        weightMap.remove(id);
+                        tree.remove(id);
+                    }
+                }
+            }));
+        }
+
+        List<Thread> readers = new ArrayList<>();
+
+        for (int r = 0; r < READER_COUNT; r++) {
+            Random random = new Random(RANDOM.nextLong());
+
+            readers.add(new Thread(() -> {
+                int[] weights = new int[64];
+                String[] ids = new String[weights.length];
+
+                while (writers.stream().anyMatch(Thread::isAlive)) {
+                    int weightSum = tree.weightSum();
+
+                    if (weightSum < 0) {
+                        throw new RuntimeException("Negative weight sum!");
+                    }
+
+                    String id = tree.select(random.nextInt(weightSum + 1));
+
+                    if (id != null && !everInserted.contains(id)) {
+                        throw new RuntimeException("Selected an id that was never inserted: " + id);
+                    }
+
+                    for (int i = 0; i < weights.length; i++) {
+                        weights[i] = random.nextInt(weightSum + 1);
+                    }
+
+                    tree.select(weights, ids);
+
+                    for (String batchId: ids) {
+                        if (batchId != null && !everInserted.contains(batchId)) {
+                            throw new RuntimeException("Batch selected an id that was never inserted: " + batchId);
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread: writers) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+
+        for (Thread thread: readers) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+
+        for (Thread thread: writers) {
+            thread.join();
+        }
+
+        for (Thread thread: readers) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException("Concurrent test failed", failure.get());
+        }
+
+        Map<String, Integer> weightMap = new HashMap<>();
+
+        for (Map<String, Integer> writerMap: writerMaps) {
+            weightMap.putAll(writerMap);
+        }
+
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        Map<String, Integer> entries = new HashMap<>();
+
+        tree.forEach(entries::put);
+
+        if (!entries.equals(weightMap)) {
+            throw new RuntimeException("Entries after the concurrent run do not match!");
+        }
+
+        System.out.println(weightMap.size() + " nodes after the concurrent run with weight sum " + weightSum);
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    private static void testTree(Map<String, Integer> weightMap, int weightSum, ConcurrentBalancedWeightTree tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        if (tree.select(weightSum) != null) {
+            throw new RuntimeException("Weight sum selected an id!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            int r = RANDOM.nextInt(weightSum);
+
+            String selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,188 @@
+import java.util.concurrent.locks.StampedLock;
+import java.util.random.RandomGenerator;
+
+/**
+ * NonRecursiveBalancedWeightTree made safe for concurrent use.
+ * Insert, update and remove serialize on the write lock of a StampedLock while select and weightSum run
+ * optimistically and are only repeated, at last under the read lock, when a write overlapped them.
+ * An optimistic reader racing a writer may see half swapped nodes but never a cycle, since swaps move ids and
+ * weights between nodes without relinking them and the only node that is unlinked by remove is a leaf.
+ */
+public class ConcurrentBalancedWeightTree implements WeightTree {
+
+    private static final int OPTIMISTIC_TRIES = 4;
+
+    private final NonRecursiveBalancedWeightTree tree;
+
+    private final StampedLock lock = new StampedLock();
+
+    public ConcurrentBalancedWeightTree() {
+        this(new NonRecursiveBalancedWeightTree());
+    }
+
+    /**
+     * Takes ownership of the tree, for example one made by NonRecursiveBalancedWeightTree.build.
+     * The tree must not be used directly afterwards. A hot prefix enabled on it beforehand is kept up to date by
+     * the writers, so select still only reads.
+     */
+    public ConcurrentBalancedWeightTree(NonRecursiveBalancedWeightTree tree) {
+        this.tree = tree;
+    }
+
+    public int weightSum() {
+        for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            try {
+                int weightSum = tree.weightSum();
+
+                if (lock.validate(stamp)) {
+                    return weightSum;
+                }
+            } catch (RuntimeException e) {
+                // A writer changed the root under us. The stamp will not validate, so simply try again.
+            }
+        }
+
+        long stamp = lock.readLock();
+
+        try {
+            return tree.weightSum();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public String select(int weight) {
+        for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            try {
+                String id = tree.select(weight);
+
+                if (lock.validate(stamp)) {
+                    return id;
+                }
+            } catch (RuntimeException e) {
+                // A writer unlinked a child while we were reading it. Try again with a new stamp.
+            }
+        }
+
+        long stamp = lock.readLock();
+
+        try {
+            return tree.select(weight);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void select(int[] weights, String[] ids) {
+        for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            try {
+                tree.select(weights, ids);
+
+                if (lock.validate(stamp)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // Same as in select. Partial results are overwritten by the next try.
+            }
+        }
+
+        long stamp = lock.readLock();
+
+        try {
+            tree.select(weights, ids);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a copy of the statistics taken under the read lock.
+     */
+    public TreeStatistics statistics() {
+        long stamp = lock.readLock();
+
+        try {
+            return new TreeStatistics(tree.statistics());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Walks the tree under the read lock, so writers wait until the consumer has seen every entry.
+     */
+    public void forEach(WeightConsumer consumer) {
+        long stamp = lock.readLock();
+
+        try {
+            tree.forEach(consumer);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs under the write lock since the picked entries are excluded from the tree while the sample is drawn.
+     */
+    public String[] sampleDistinct(int k, RandomGenerator random) {
+        long stamp = lock.writeLock();
+
+        try {
+            return tree.sampleDistinct(k, random);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void insert(String id, int weight) {
+        long stamp = lock.writeLock();
+
+        try {
+            tree.insert(id, weight);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(String id) {
+        long stamp = lock.writeLock();
+
+        try {
+            return tree.remove(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean update(String id, int weight) {
+        long stamp = lock.writeLock();
+
+        try {
+            return tree.update(id, weight);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+}
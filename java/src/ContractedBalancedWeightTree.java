@@ -5,7 +5,7 @@ import java.util.Map;
  * NonRecursiveBalancedWeightTree but the object references are replaced with id references.
  * This is an auxiliary modification to help in writing the contract code.
  */
-public class ContractedBalancedWeightTree {
+public class ContractedBalancedWeightTree implements WeightTree {
 
     private static class Node {
 
@@ -36,10 +36,22 @@ public class ContractedBalancedWeightTree {
 
     private Map<String, Integer> nodeMap = new HashMap<>();
 
+    private final TreeStatistics statistics = new TreeStatistics();
+
     public int weightSum() {
         return root == 0 ? 0 : nodes.get(root).weightSum;
     }
 
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    public void forEach(WeightConsumer consumer) {
+        for (Node node: nodes.values()) {
+            consumer.accept(node.id, node.weight);
+        }
+    }
+
     public String select(int weight) {
         if (root == 0) {
             return null;
@@ -78,9 +90,13 @@ public class ContractedBalancedWeightTree {
 
         if (root == 0) {
             root = counter;
+
+            statistics.inserted(0, weight);
             return;
         }
 
+        int depth = 1;
+
         int probe = root;
 
         while (true) {
@@ -92,6 +108,8 @@ public class ContractedBalancedWeightTree {
 
                 nodes.get(probe).leftChild = counter;
 
+                statistics.inserted(depth, weight);
+
                 promote(counter);
                 return;
             }
@@ -101,6 +119,8 @@ public class ContractedBalancedWeightTree {
 
                 nodes.get(probe).rightChild = counter;
 
+                statistics.inserted(depth, weight);
+
                 promote(counter);
                 return;
             }
@@ -110,6 +130,8 @@ public class ContractedBalancedWeightTree {
             else {
                 probe = nodes.get(probe).leftChild;
             }
+
+            depth++;
         }
     }
 
@@ -117,6 +139,8 @@ public class ContractedBalancedWeightTree {
         int probe = node;
 
         while (nodes.get(probe).parent != 0 && nodes.get(probe).weight > nodes.get(nodes.get(probe).parent).weight) {
+            statistics.promoteSwapped(nodes.get(probe).weight, nodes.get(nodes.get(probe).parent).weight);
+
             String id = nodes.get(probe).id;
             nodes.get(probe).id = nodes.get(nodes.get(probe).parent).id;
             nodes.get(nodes.get(probe).parent).id = id;
@@ -142,20 +166,26 @@ public class ContractedBalancedWeightTree {
             return false;
         }
 
+        int depth = 0;
+
             int probe = node;
 
         while (nodes.get(probe).parent != 0) {
             nodes.get(nodes.get(probe).parent).weightSum -= nodes.get(node).weight;
 
             probe = nodes.get(probe).parent;
+
+            depth++;
         }
 
-        pullUp(node);
+        statistics.removed(depth, nodes.get(node).weight);
+
+        pullUp(node, depth);
 
         return true;
     }
 
-    private void pullUp(int node) {
+    private void pullUp(int node, int depth) {
         int probe = node;
 
         while (true) {
@@ -173,6 +203,8 @@ public class ContractedBalancedWeightTree {
 
                     nodes.remove(probe);
 
+                    statistics.cut(depth);
+
                     return;
                 }
                 else {
@@ -182,6 +214,8 @@ public class ContractedBalancedWeightTree {
                     nodes.get(probe).weight = nodes.get(nodes.get(probe).rightChild).weight;
                     nodes.get(probe).weightSum = nodes.get(nodes.get(probe).rightChild).weightSum;
 
+                    statistics.pulledUp(nodes.get(probe).weight);
+
                     probe = nodes.get(probe).rightChild;
                 }
             }
@@ -192,6 +226,8 @@ public class ContractedBalancedWeightTree {
                 nodes.get(probe).weight = nodes.get(nodes.get(probe).leftChild).weight;
                 nodes.get(probe).weightSum = nodes.get(nodes.get(probe).leftChild).weightSum;
 
+                statistics.pulledUp(nodes.get(probe).weight);
+
                 probe = nodes.get(probe).leftChild;
             }
             else if (nodes.get(nodes.get(probe).leftChild).weight > nodes.get(nodes.get(probe).rightChild).weight) {
@@ -201,6 +237,8 @@ public class ContractedBalancedWeightTree {
                 nodes.get(probe).weight = nodes.get(nodes.get(probe).leftChild).weight;
                 nodes.get(probe).weightSum = nodes.get(nodes.get(probe).leftChild).weightSum + nodes.get(nodes.get(probe).rightChild).weightSum;
 
+                statistics.pulledUp(nodes.get(probe).weight);
+
                 probe = nodes.get(probe).leftChild;
             }
             else {
@@ -210,8 +248,12 @@ public class ContractedBalancedWeightTree {
                 nodes.get(probe).weight = nodes.get(nodes.get(probe).rightChild).weight;
                 nodes.get(probe).weightSum = nodes.get(nodes.get(probe).leftChild).weightSum + nodes.get(nodes.get(probe).rightChild).weightSum;
 
+                statistics.pulledUp(nodes.get(probe).weight);
+
                 probe = nodes.get(probe).rightChild;
             }
+
+            depth++;
         }
     }
 
@@ -229,6 +271,8 @@ public class ContractedBalancedWeightTree {
         nodes.get(node).weightSum += weight;
         nodes.get(node).weightSum -= oldWeight;
 
+        int depth = 0;
+
         int probe = node;
 
         while (nodes.get(probe).parent != 0) {
@@ -236,8 +280,12 @@ public class ContractedBalancedWeightTree {
             nodes.get(nodes.get(probe).parent).weightSum -= oldWeight;
 
             probe = nodes.get(probe).parent;
+
+            depth++;
         }
 
+        statistics.updated(depth, weight - oldWeight);
+
         if (weight > oldWeight) {
             promote(node);
         }
@@ -256,6 +304,8 @@ public class ContractedBalancedWeightTree {
                 if (nodes.get(probe).rightChild != 0) {
                     if (nodes.get(nodes.get(probe).leftChild).weight > nodes.get(nodes.get(probe).rightChild).weight) {
                         if (nodes.get(nodes.get(probe).leftChild).weight > nodes.get(probe).weight) {
+                            statistics.demoteSwapped(nodes.get(nodes.get(probe).leftChild).weight, nodes.get(probe).weight);
+
                             String id = nodes.get(probe).id;
                             nodes.get(probe).id = nodes.get(nodes.get(probe).leftChild).id;
                             nodes.get(nodes.get(probe).leftChild).id = id;
@@ -276,6 +326,8 @@ public class ContractedBalancedWeightTree {
 
                         return;
                     } else if (nodes.get(nodes.get(probe).rightChild).weight > nodes.get(probe).weight) {
+                        statistics.demoteSwapped(nodes.get(nodes.get(probe).rightChild).weight, nodes.get(probe).weight);
+
                         String id = nodes.get(probe).id;
                         nodes.get(probe).id = nodes.get(nodes.get(probe).rightChild).id;
                         nodes.get(nodes.get(probe).rightChild).id = id;
@@ -296,6 +348,8 @@ public class ContractedBalancedWeightTree {
 
                     return;
                 } else if (nodes.get(nodes.get(probe).leftChild).weight > nodes.get(probe).weight) {
+                    statistics.demoteSwapped(nodes.get(nodes.get(probe).leftChild).weight, nodes.get(probe).weight);
+
                     String id = nodes.get(probe).id;
                     nodes.get(probe).id = nodes.get(nodes.get(probe).leftChild).id;
                     nodes.get(nodes.get(probe).leftChild).id = id;
@@ -316,6 +370,8 @@ public class ContractedBalancedWeightTree {
 
                 return;
             } else if (nodes.get(probe).rightChild != 0 && nodes.get(nodes.get(probe).rightChild).weight > nodes.get(probe).weight) {
+                statistics.demoteSwapped(nodes.get(nodes.get(probe).rightChild).weight, nodes.get(probe).weight);
+
                 String id = nodes.get(probe).id;
                 nodes.get(probe).id = nodes.get(nodes.get(probe).rightChild).id;
                 nodes.get(nodes.get(probe).rightChild).id = id;
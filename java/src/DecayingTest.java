@@ -0,0 +1,201 @@
+import java.util.*;
+
+public class DecayingTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        decayTest();
+        tinyFactorTest();
+        argumentTest();
+    }
+
+    /**
+     * Runs the list next to a map of double weights that is scaled the same way.
+     * Decaying by 0.7 a hundred times pushes the unit past 2^40 again and again, so the stored weights are shifted
+     * down, and growing by 1.5 afterwards pulls it under 2^20, so they are shifted up. A weight far larger than the
+     * stored weight sum can hold then forces the shift in store before it is inserted.
+     */
+    private static void decayTest() {
+        Map<String, Double> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        DecayingWeightedList list = new DecayingWeightedList();
+
+        for (int i = 0; i < 200; i++) {
+            double weight = RANDOM.nextInt(100) + 1;
+
+            weightMap.put("D" + i, weight);
+            ids.add("D" + i);
+            list.insert("D" + i, weight);
+        }
+
+        for (double factor: new double[] { 0.7, 1.5 }) {
+            for (int round = 0; round < 100; round++) {
+                list.scaleAll(factor);
+                weightMap.replaceAll((id, weight) -> weight * factor);
+
+                for (int i = 0; i < 5; i++) {
+                    String id = ids.get(RANDOM.nextInt(ids.size()));
+                    double weight = RANDOM.nextInt(100) + 1;
+
+                    weightMap.put(id, weight);
+                    list.update(id, weight);
+                }
+
+                testWeightSum(weightMap, list);
+            }
+
+            System.out.println("Scaled by " + factor + " a hundred times to a weight sum of " + list.weightSum());
+
+            testList(weightMap, list);
+        }
+
+        double huge = weightSum(weightMap) * 1e9;
+
+        weightMap.put("H", huge);
+        list.insert("H", huge);
+
+        testWeightSum(weightMap, list);
+
+        weightMap.remove("H");
+        list.remove("H");
+
+        testWeightSum(weightMap, list);
+        testList(weightMap, list);
+
+        System.out.println("Decay test passed");
+    }
+
+    /**
+     * A factor so small that the stored weights are shifted down by more than 64 bits, which has to clear them
+     * instead of shifting them by the count mod 64 while the unit moves by the whole count. An entry inserted
+     * afterwards must then be the only one ever selected, and a weight that forces a shift of more than 64 bits on
+     * insert must be stored as well.
+     */
+    private static void tinyFactorTest() {
+        Map<String, Double> weightMap = new HashMap<>();
+        DecayingWeightedList list = new DecayingWeightedList();
+
+        weightMap.put("A", 1000.0);
+        weightMap.put("B", 3000.0);
+        list.insert("A", 1000);
+        list.insert("B", 3000);
+
+        list.scaleAll(1e-25);
+        weightMap.replaceAll((id, weight) -> weight * 1e-25);
+
+        testWeightSum(weightMap, list);
+
+        weightMap.put("C", 1.0);
+        list.insert("C", 1);
+
+        testWeightSum(weightMap, list);
+        testOnlySelected("C", list);
+
+        weightMap.put("D", 1e35);
+        list.insert("D", 1e35);
+
+        testWeightSum(weightMap, list);
+        testOnlySelected("D", list);
+
+        System.out.println("Tiny factor test passed");
+    }
+
+    private static void testOnlySelected(String id, DecayingWeightedList list) {
+        for (int i = 0; i < SELECTION_TRY_COUNT / 10; i++) {
+            if (!id.equals(list.select(RANDOM))) {
+                throw new RuntimeException("Selected an id other than " + id + "!");
+            }
+        }
+    }
+
+    private static void argumentTest() {
+        DecayingWeightedList list = new DecayingWeightedList();
+
+        for (double factor: new double[] { 0, -1, Double.NaN, Double.POSITIVE_INFINITY }) {
+            try {
+                list.scaleAll(factor);
+
+                throw new RuntimeException("Factor " + factor + " was accepted!");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        for (double weight: new double[] { -1, Double.NaN, Double.POSITIVE_INFINITY }) {
+            try {
+                list.insert("A", weight);
+
+                throw new RuntimeException("Weight " + weight + " was accepted!");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        if (list.select(RANDOM) != null) {
+            throw new RuntimeException("Empty list selected an id!");
+        }
+
+        System.out.println("Argument test passed");
+    }
+
+    private static double weightSum(Map<String, Double> weightMap) {
+        double weightSum = 0;
+
+        for (double weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        return weightSum;
+    }
+
+    /**
+     * Every stored weight is off by less than two units of the fixed point after rounding and shifting, and the
+     * unit stays above 2^20 unless the weight sum is large enough for the relative bound to cover it.
+     */
+    private static void testWeightSum(Map<String, Double> weightMap, DecayingWeightedList list) {
+        double weightSum = weightSum(weightMap);
+
+        double tolerance = 1e-6 * weightSum + weightMap.size() * Math.scalb(1.0, -18);
+
+        if (Math.abs(list.weightSum() - weightSum) > tolerance) {
+            throw new RuntimeException("Weight sum " + list.weightSum() + " does not match " + weightSum);
+        }
+    }
+
+    /**
+     * Compares the selection frequencies with the weights by total variation distance, since decayed entries have
+     * probabilities too small for a relative error per id.
+     */
+    private static void testList(Map<String, Double> weightMap, DecayingWeightedList list) {
+        double weightSum = weightSum(weightMap);
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(list.select(RANDOM), 1, Integer::sum);
+        }
+
+        if (!weightMap.keySet().containsAll(selectionCounts.keySet())) {
+            throw new RuntimeException("Selected an id that is not in the list!");
+        }
+
+        double distance = 0;
+
+        for (String id: weightMap.keySet()) {
+            double expected = weightMap.get(id) / weightSum;
+            double actual = selectionCounts.getOrDefault(id, 0).doubleValue() / SELECTION_TRY_COUNT;
+
+            distance += Math.abs(expected - actual) / 2;
+        }
+
+        if (distance > 0.01) {
+            throw new RuntimeException("Distance is too much!");
+        }
+
+        System.out.println("Random selection test passed with distance " + distance);
+    }
+
+}
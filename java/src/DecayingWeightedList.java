@@ -0,0 +1,113 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Weighted list whose weights can all be multiplied by the same factor in constant time, for example to let older
+ * entries decay exponentially against newer ones.
+ * The entries are kept in a LongWeightBalancedWeightTree as fixed point numbers of a global unit, the stored value
+ * of a weight of 1 at the current time. Scaling all weights only changes the unit, since it changes neither the
+ * order of the weights nor their relative sums, and weights given to insert and update are converted with the
+ * unit of the moment.
+ * <p>
+ * Decay makes the unit grow. Once it leaves its range, or a new weight would overflow the weight sum, every stored
+ * weight is shifted in a single linear pass and the unit is shifted with it. With a decay of a few percent per call
+ * this happens only every few hundred calls. Entries that decayed below 2^-20 of a weight of 1 at that time drop to
+ * zero and are no longer selected, but stay in the list until they are updated or removed.
+ */
+public class DecayingWeightedList {
+
+    private static final int MIN_UNIT_EXPONENT = 20;
+    private static final int MAX_UNIT_EXPONENT = 40;
+
+    private static final long WEIGHT_SUM_LIMIT = 1L << 62;
+
+    private final LongWeightBalancedWeightTree tree = new LongWeightBalancedWeightTree();
+
+    private double unit = Math.scalb(1.0, MIN_UNIT_EXPONENT);
+
+    public double weightSum() {
+        return tree.weightSum() / unit;
+    }
+
+    public TreeStatistics statistics() {
+        return tree.statistics();
+    }
+
+    /**
+     * Returns an id with probability proportional to its current weight, or null if all weights are zero.
+     */
+    public String select(RandomGenerator random) {
+        long weightSum = tree.weightSum();
+
+        return weightSum == 0 ? null : tree.select(random.nextLong(weightSum));
+    }
+
+    /**
+     * Multiplies every weight by the factor, in constant time unless the stored weights have to be shifted.
+     */
+    public void scaleAll(double factor) {
+        if (!(factor > 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("Factor must be positive and finite: " + factor);
+        }
+
+        unit /= factor;
+
+        int exponent = Math.getExponent(unit);
+
+        if (exponent > MAX_UNIT_EXPONENT) {
+            shift(exponent - MIN_UNIT_EXPONENT);
+        }
+        else if (exponent < MIN_UNIT_EXPONENT) {
+            // Growing weights are shifted up only as far as the weight sum leaves room for.
+            int headroom = Long.numberOfLeadingZeros(tree.weightSum()) - (Long.SIZE - 62);
+
+            shift(-Math.min(MIN_UNIT_EXPONENT - exponent, Math.max(0, headroom)));
+        }
+    }
+
+    public void insert(String id, double weight) {
+        tree.insert(id, store(weight, 0));
+    }
+
+    public boolean remove(String id) {
+        return tree.remove(id);
+    }
+
+    public boolean update(String id, double weight) {
+        return tree.update(id, store(weight, 0));
+    }
+
+    /**
+     * Converts the weight to its stored value, first shifting the stored weights down if the weight sum could
+     * otherwise overflow, assuming none of the current stored weights is replaced.
+     */
+    private long store(double weight, int attempt) {
+        if (!(weight >= 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight must be non-negative and finite: " + weight);
+        }
+
+        double stored = weight * unit;
+
+        if (stored + tree.weightSum() < WEIGHT_SUM_LIMIT) {
+            return Math.round(stored);
+        }
+
+        if (attempt > 0) {
+            throw new IllegalArgumentException("Weight " + weight + " is too large for the weight sum");
+        }
+
+        shift(Math.max(1, Math.getExponent(stored + tree.weightSum()) - 60));
+
+        return store(weight, attempt + 1);
+    }
+
+    private void shift(int shift) {
+        if (shift == 0) {
+            return;
+        }
+
+        tree.shiftWeights(shift);
+
+        unit = Math.scalb(unit, -shift);
+    }
+
+}
@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class DurableBWTTest {
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) throws IOException {
+        Path directory = Files.createTempDirectory("tree");
+
+        try {
+            recoveryTest(directory);
+        } finally {
+            try (Stream<Path> paths = Files.list(directory)) {
+                for (Path path: (Iterable<Path>) paths::iterator) {
+                    Files.delete(path);
+                }
+            }
+
+            Files.delete(directory);
+        }
+    }
+
+    private static void recoveryTest(Path directory) throws IOException {
+        Map<Long, Integer> weightMap = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+
+        // Small segments so the run goes through many rolls and compactions.
+        DurableBalancedWeightTree tree = DurableBalancedWeightTree.open(directory, 4096, 1);
+
+        for (int round = 0; round < 5; round++) {
+            randomMutations(tree, weightMap, ids, 3000);
+
+            tree.close();
+
+            tree = DurableBalancedWeightTree.open(directory, 4096, 1);
+
+            testTree(weightMap, tree);
+        }
+
+        randomMutations(tree, weightMap, ids, 100);
+
+        tree.sync();
+
+        // A crash in the middle of a write leaves a torn batch at the end of the last segment.
+        Path lastSegment;
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            lastSegment = paths.filter(path -> path.getFileName().toString().startsWith("journal-"))
+                    .max(Comparator.comparingLong(path -> Long.parseLong(path.getFileName().toString().substring(8))))
+                    .orElseThrow();
+        }
+
+        tree.close();
+
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 26, 0, 0, 0, 1, 2, 3, 4, 1, 9 }));
+        }
+
+        tree = DurableBalancedWeightTree.open(directory, 4096, 1);
+
+        testTree(weightMap, tree);
+
+        tree.close();
+
+        System.out.println("Recovery test passed with " + weightMap.size() + " entries");
+    }
+
+    private static void randomMutations(DurableBalancedWeightTree tree, Map<Long, Integer> weightMap, List<Long> ids, int count) {
+        for (int i = 0; i < count; i++) {
+            int rand = RANDOM.nextInt(4);
+
+            if (rand > 1 || ids.isEmpty()) {
+                long id = RANDOM.nextInt(1 << 20) + 1;
+
+                if (weightMap.containsKey(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+            }
+            else if (rand == 1) {
+                long id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            }
+            else {
+                long id = ids.remove(RANDOM.nextInt(ids.size()));
+
+                weightMap.remove(id);
+                tree.remove(id);
+            }
+        }
+    }
+
+    private static void testTree(Map<Long, Integer> weightMap, DurableBalancedWeightTree tree) {
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        if (weightSum != tree.weightSum() || weightMap.size() != tree.size()) {
+            throw new RuntimeException("Recovered tree does not match!");
+        }
+
+        Map<Long, Integer> selectionCounts = new HashMap<>();
+
+        for (int w = 0; w < weightSum; w++) {
+            selectionCounts.merge(tree.select(w), 1, Integer::sum);
+        }
+
+        if (!selectionCounts.equals(weightMap)) {
+            throw new RuntimeException("Recovered weights do not match!");
+        }
+    }
+
+}
@@ -0,0 +1,513 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * OffHeapBalancedWeightTree that survives a crash by journaling every insert, update and remove.
+ * A mutation is applied to the tree and appended to an in-memory batch, which a flusher thread writes to the
+ * current journal segment and forces to disk every flush interval, so many mutations share one fsync.
+ * Mutations do not wait for that. Call sync to wait until everything before it is durable.
+ * <p>
+ * Once a segment grows past the segment size it is sealed and a compaction thread folds all sealed segments into
+ * a new snapshot, starting from the previous snapshot, after which the folded segments are deleted.
+ * A snapshot named snapshot-N holds everything in the segments before journal-N.
+ * Open recovers by mapping the latest snapshot and replaying the segments after it. Every batch carries its length
+ * and a checksum, so a batch torn by a crash is recognized and cut off.
+ * <p>
+ * Select never touches the journal. Like the tree itself this class is meant to be used from a single thread.
+ * Only flushing and compaction run elsewhere. An I/O error on either of them fails every later mutation and sync.
+ */
+public class DurableBalancedWeightTree implements Closeable {
+
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+
+    private static final int RECORD_SIZE = 1 + Long.BYTES + Integer.BYTES;
+    private static final int BATCH_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String JOURNAL_PREFIX = "journal-";
+
+    private static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 2;
+
+    private final Path directory;
+
+    private final OffHeapBalancedWeightTree tree;
+
+    private final long segmentSize;
+    private final long flushIntervalMillis;
+
+    private final Object lock = new Object();
+
+    // Guarded by the lock.
+    private ByteBuffer pending = allocateBatch(1 << 16);
+    private long appendedCount = 0;
+    private long durableCount = 0;
+    private IOException failure = null;
+    private boolean flushRequested = false;
+    private boolean closed = false;
+
+    // Used by the flusher thread only.
+    private ByteBuffer spare = allocateBatch(1 << 16);
+    private final ByteBuffer batchHeader = allocateBatch(BATCH_HEADER_SIZE);
+    private final CRC32 checksum = new CRC32();
+    private long segmentNumber;
+    private FileChannel segment;
+    private Thread compactor = null;
+
+    private volatile long snapshotNumber;
+
+    private final Thread flusher;
+
+    private DurableBalancedWeightTree(Path directory, OffHeapBalancedWeightTree tree, long snapshotNumber,
+                                      long segmentNumber, long segmentSize, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.tree = tree;
+
+        this.snapshotNumber = snapshotNumber;
+        this.segmentNumber = segmentNumber;
+
+        this.segmentSize = segmentSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        segment = createSegment(segmentNumber);
+
+        flusher = new Thread(this::flushLoop, "journal-flusher-" + directory.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public static DurableBalancedWeightTree open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Recovers the tree from the directory, or starts an empty one if the directory holds nothing yet.
+     */
+    public static DurableBalancedWeightTree open(Path directory, long segmentSize, long flushIntervalMillis) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Long> snapshotNumbers = numbers(directory, SNAPSHOT_PREFIX);
+
+        long snapshotNumber = snapshotNumbers.isEmpty() ? 0 : snapshotNumbers.get(snapshotNumbers.size() - 1);
+
+        OffHeapBalancedWeightTree tree = snapshotNumbers.isEmpty() ?
+                new OffHeapBalancedWeightTree() : OffHeapSnapshot.open(snapshotPath(directory, snapshotNumber));
+
+        long segmentNumber = snapshotNumber;
+
+        for (long journalNumber: numbers(directory, JOURNAL_PREFIX)) {
+            if (journalNumber < snapshotNumber) {
+                continue;
+            }
+
+            replay(tree, journalPath(directory, journalNumber), true);
+
+            segmentNumber = journalNumber + 1;
+        }
+
+        DurableBalancedWeightTree durableTree = new DurableBalancedWeightTree(directory, tree, snapshotNumber,
+                segmentNumber, segmentSize, flushIntervalMillis);
+
+        durableTree.deleteObsolete();
+
+        return durableTree;
+    }
+
+    public int weightSum() {
+        return tree.weightSum();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public TreeStatistics statistics() {
+        return tree.statistics();
+    }
+
+    public long select(int weight) {
+        return tree.select(weight);
+    }
+
+    public void insert(long id, int weight) {
+        tree.insert(id, weight);
+
+        append(INSERT, id, weight);
+    }
+
+    public boolean remove(long id) {
+        if (!tree.remove(id)) {
+            return false;
+        }
+
+        append(REMOVE, id, 0);
+
+        return true;
+    }
+
+    public boolean update(long id, int weight) {
+        if (!tree.update(id, weight)) {
+            return false;
+        }
+
+        append(UPDATE, id, weight);
+
+        return true;
+    }
+
+    /**
+     * Waits until every mutation made before the call is on disk.
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            long target = appendedCount;
+
+            flushRequested = true;
+
+            lock.notifyAll();
+
+            while (durableCount < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("Interrupted while waiting for the journal");
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Flushes the journal, waits for a running compaction and stops the background threads.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+
+            lock.notifyAll();
+        }
+
+        try {
+            flusher.join();
+
+            if (compactor != null) {
+                compactor.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while closing the journal");
+        } finally {
+            segment.close();
+        }
+
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void append(byte operation, long id, int weight) {
+        synchronized (lock) {
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+
+            if (pending.remaining() < RECORD_SIZE) {
+                pending = allocateBatch(pending.capacity() * 2).put(pending.flip());
+            }
+
+            pending.put(operation).putLong(id).putInt(weight);
+
+            appendedCount++;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            boolean last;
+
+            synchronized (lock) {
+                long deadline = System.nanoTime() + flushIntervalMillis * 1_000_000;
+
+                // Waiting out the interval even with pending mutations is what lets them share one fsync.
+                while (!flushRequested && !closed) {
+                    long remainingNanos = deadline - System.nanoTime();
+
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+
+                    try {
+                        lock.wait(remainingNanos / 1_000_000, (int) (remainingNanos % 1_000_000));
+                    } catch (InterruptedException e) {
+                        // Only close stops the flusher, so the interrupt is not meant for us.
+                    }
+                }
+
+                flushRequested = false;
+
+                ByteBuffer batch = pending;
+                pending = spare;
+                spare = batch;
+
+                target = appendedCount;
+                last = closed;
+            }
+
+            try {
+                if (spare.position() != 0) {
+                    write(spare.flip());
+                }
+
+                spare.clear();
+
+                synchronized (lock) {
+                    durableCount = target;
+
+                    lock.notifyAll();
+                }
+
+                if (segment.size() >= segmentSize && !last) {
+                    roll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+
+                    lock.notifyAll();
+                }
+
+                return;
+            }
+
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        checksum.reset();
+        checksum.update(batch.duplicate());
+
+        batchHeader.clear();
+        batchHeader.putInt(batch.remaining()).putInt((int) checksum.getValue()).flip();
+
+        ByteBuffer[] buffers = { batchHeader, batch };
+
+        while (batch.hasRemaining()) {
+            segment.write(buffers);
+        }
+
+        segment.force(false);
+    }
+
+    /**
+     * Seals the current segment and starts the next one, then starts a compaction unless one is still running.
+     * A compaction that is still running leaves the newly sealed segments to the next one.
+     */
+    private void roll() throws IOException {
+        segment.close();
+
+        segment = createSegment(++segmentNumber);
+
+        if (compactor == null || !compactor.isAlive()) {
+            long sealedNumber = segmentNumber;
+
+            compactor = new Thread(() -> compact(sealedNumber), "journal-compactor-" + directory.getFileName());
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    /**
+     * Replays the segments before the sealed number onto the last snapshot and writes the result as a new one.
+     * The live tree is not touched, the snapshot is rebuilt from the files alone.
+     */
+    private void compact(long sealedNumber) {
+        try {
+            long snapshotNumber = this.snapshotNumber;
+
+            Path snapshotPath = snapshotPath(directory, snapshotNumber);
+
+            OffHeapBalancedWeightTree snapshotTree = Files.exists(snapshotPath) ?
+                    OffHeapSnapshot.open(snapshotPath) : new OffHeapBalancedWeightTree();
+
+            for (long journalNumber = snapshotNumber; journalNumber < sealedNumber; journalNumber++) {
+                replay(snapshotTree, journalPath(directory, journalNumber), false);
+            }
+
+            OffHeapSnapshot.write(snapshotTree, snapshotPath(directory, sealedNumber));
+
+            this.snapshotNumber = sealedNumber;
+
+            deleteObsolete();
+        } catch (IOException e) {
+            synchronized (lock) {
+                failure = e;
+
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshots before the last one, the segments it holds and snapshots left half written by a crash.
+     * A file that can not be deleted yet, for example because it is still mapped on some platforms, is left for the
+     * next compaction. Runs only where no compaction can be writing a snapshot at the same time.
+     */
+    private void deleteObsolete() throws IOException {
+        long snapshotNumber = this.snapshotNumber;
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*.tmp")) {
+            for (Path path: paths) {
+                deleteQuietly(path);
+            }
+        }
+
+        for (long number: numbers(directory, SNAPSHOT_PREFIX)) {
+            if (number < snapshotNumber) {
+                deleteQuietly(snapshotPath(directory, number));
+            }
+        }
+
+        for (long number: numbers(directory, JOURNAL_PREFIX)) {
+            if (number < snapshotNumber) {
+                deleteQuietly(journalPath(directory, number));
+            }
+        }
+    }
+
+    /**
+     * Applies every complete batch of the segment to the tree. With truncate a torn batch at the end is cut off,
+     * which is only safe during recovery when nothing is writing the segment.
+     */
+    private static void replay(OffHeapBalancedWeightTree tree, Path path, boolean truncate) throws IOException {
+        try (FileChannel channel = truncate ?
+                FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(path)) {
+            ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+            CRC32 checksum = new CRC32();
+
+            while (segment.remaining() >= BATCH_HEADER_SIZE) {
+                int length = segment.getInt(segment.position());
+                int expectedChecksum = segment.getInt(segment.position() + Integer.BYTES);
+
+                if (length <= 0 || length % RECORD_SIZE != 0 || length > segment.remaining() - BATCH_HEADER_SIZE) {
+                    break;
+                }
+
+                ByteBuffer batch = segment.slice(segment.position() + BATCH_HEADER_SIZE, length).order(ByteOrder.LITTLE_ENDIAN);
+
+                checksum.reset();
+                checksum.update(batch.duplicate());
+
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    break;
+                }
+
+                while (batch.hasRemaining()) {
+                    byte operation = batch.get();
+                    long id = batch.getLong();
+                    int weight = batch.getInt();
+
+                    if (operation == INSERT) {
+                        tree.insert(id, weight);
+                    }
+                    else if (operation == UPDATE) {
+                        tree.update(id, weight);
+                    }
+                    else {
+                        tree.remove(id);
+                    }
+                }
+
+                segment.position(segment.position() + BATCH_HEADER_SIZE + length);
+            }
+
+            if (truncate && segment.hasRemaining()) {
+                channel.truncate(segment.position());
+                channel.force(true);
+            }
+        }
+    }
+
+    private FileChannel createSegment(long number) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath(directory, number), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+
+        OffHeapSnapshot.forceDirectory(directory);
+
+        return channel;
+    }
+
+    private static ByteBuffer allocateBatch(int byteCount) {
+        return ByteBuffer.allocateDirect(byteCount).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static Path snapshotPath(Path directory, long number) {
+        return directory.resolve(SNAPSHOT_PREFIX + number);
+    }
+
+    private static Path journalPath(Path directory, long number) {
+        return directory.resolve(JOURNAL_PREFIX + number);
+    }
+
+    /**
+     * Returns the numbers of the files with the prefix in ascending order.
+     */
+    private static List<Long> numbers(Path directory, String prefix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path path: paths) {
+                try {
+                    numbers.add(Long.parseLong(path.getFileName().toString().substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // Not a number, like the temporary file of a snapshot that was being written.
+                }
+            }
+        }
+
+        Collections.sort(numbers);
+
+        return numbers;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Retried by the next compaction.
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+import java.util.*;
+
+public class FenwickTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        FenwickWeightedList tree = new FenwickWeightedList();
+
+        int weightSum = 0;
+
+        String id = UUID.randomUUID().toString().substring(0, 4);
+        int weight = RANDOM.nextInt(100) + 1;
+        weightSum += weight;
+
+        weightMap.put(id, weight);
+        ids.add(id);
+        tree.insert(id, weight);
+
+        int nodeCount = 1;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1) {
+                id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+
+                nodeCount++;
+            }
+            else if (rand == 1 && nodeCount > 0) {
+                id = ids.get(RANDOM.nextInt(ids.size()));
+                weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else if (nodeCount > 0) {
+                id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+                tree.remove(id);
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        if (nodeCount != tree.size()) {
+            throw new RuntimeException("Size does not match!");
+        }
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    private static void testTree(Map<String, Integer> weightMap, int weightSum, FenwickWeightedList tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            int r = RANDOM.nextInt(weightSum);
+
+            String selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,159 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weighted list with the contract of NonRecursiveBalancedWeightTree but kept in a Fenwick tree instead of a heap.
+ * Every entry owns a fixed index and the Fenwick array holds the partial weight sums over index ranges, so insert,
+ * update and remove are a single point change with no swaps, and select is a binary lifting descent that touches
+ * one array cell per level. Heavy entries are not kept near the top, so select always walks all levels.
+ * Indexes freed by remove are reused by later inserts. Index 0 is unused so the arithmetic stays 1-based.
+ */
+public class FenwickWeightedList implements WeightTree {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] ids = new String[INITIAL_CAPACITY + 1];
+    private int[] weights = new int[INITIAL_CAPACITY + 1];
+
+    private int[] partialSums = new int[INITIAL_CAPACITY + 1];
+
+    private int[] freeIndexes = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+
+    private int counter = 0;
+    private int size = 0;
+
+    private int weightSum = 0;
+
+    private Map<String, Integer> indexMap = new HashMap<>();
+
+    public int weightSum() {
+        return weightSum;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(WeightConsumer consumer) {
+        for (int i = 1; i <= counter; i++) {
+            if (ids[i] != null) {
+                consumer.accept(ids[i], weights[i]);
+            }
+        }
+    }
+
+    public String select(int weight) {
+        if (weight >= weightSum) {
+            return null;
+        }
+
+        int capacity = partialSums.length - 1;
+
+        int position = 0;
+
+        // The capacity is a power of two, so position + step never leaves the array.
+        for (int step = capacity; step > 0; step >>>= 1) {
+            int next = position + step;
+
+            if (partialSums[next] <= weight) {
+                position = next;
+                weight -= partialSums[next];
+            }
+        }
+
+        return ids[position + 1];
+    }
+
+    public void insert(String id, int weight) {
+        int index = allocate();
+
+        indexMap.put(id, index);
+
+        ids[index] = id;
+        weights[index] = weight;
+
+        add(index, weight);
+    }
+
+    public boolean remove(String id) {
+        Integer index = indexMap.remove(id);
+
+        if (index == null) {
+            return false;
+        }
+
+        add(index, -weights[index]);
+
+        ids[index] = null;
+        weights[index] = 0;
+
+        release(index);
+
+        return true;
+    }
+
+    public boolean update(String id, int weight) {
+        Integer index = indexMap.get(id);
+
+        if (index == null) {
+            return false;
+        }
+
+        int weightDiff = weight - weights[index];
+
+        weights[index] = weight;
+
+        add(index, weightDiff);
+
+        return true;
+    }
+
+    private void add(int index, int weightDiff) {
+        weightSum += weightDiff;
+
+        for (int i = index; i < partialSums.length; i += i & -i) {
+            partialSums[i] += weightDiff;
+        }
+    }
+
+    private int allocate() {
+        size++;
+
+        if (freeCount != 0) {
+            return freeIndexes[--freeCount];
+        }
+
+        if (++counter == partialSums.length) {
+            grow();
+        }
+
+        return counter;
+    }
+
+    private void release(int index) {
+        size--;
+
+        if (freeCount == freeIndexes.length) {
+            freeIndexes = Arrays.copyOf(freeIndexes, freeIndexes.length * 2);
+        }
+
+        freeIndexes[freeCount++] = index;
+    }
+
+    /**
+     * Doubles the capacity. The range of every existing cell does not depend on the capacity, and of the new cells
+     * only the last one covers a used index, since it covers all of them.
+     */
+    private void grow() {
+        int capacity = (partialSums.length - 1) * 2;
+
+        ids = Arrays.copyOf(ids, capacity + 1);
+        weights = Arrays.copyOf(weights, capacity + 1);
+
+        partialSums = Arrays.copyOf(partialSums, capacity + 1);
+        partialSums[capacity] = weightSum;
+    }
+
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+/**
+ * Immutable copy of a weighted list in an implicit layout for fast select, meant to be rebuilt from a mutable tree
+ * every now and then and read from any number of threads in between.
+ * The entries are placed in heap order by weight, children of position i at 2i + 1 and 2i + 2, so the tree is
+ * complete and heavy entries are near the root like in the mutable trees. Every position keeps the weight sum of
+ * its left subtree next to its own weight in a single int array, so a step of select reads one pair of ints and
+ * follows no pointers, and the top levels share a few cache lines.
+ */
+public final class FrozenWeightTree {
+
+    /**
+     * Number of descents the batch select walks side by side.
+     */
+    private static final int LANES = 16;
+
+    private final String[] ids;
+
+    // The weight sum of the left subtree at 2i and the weight at 2i + 1 for the entry at position i.
+    private final int[] layout;
+
+    private final int weightSum;
+
+    private FrozenWeightTree(String[] ids, int[] weights, int count) {
+        int[] order = HeapLayout.arrange(Arrays.copyOf(weights, count));
+
+        this.ids = new String[count];
+
+        int[] weightSums = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            this.ids[i] = ids[order[i]];
+            weightSums[i] = weights[order[i]];
+        }
+
+        layout = new int[2 * count];
+
+        for (int i = count - 1; i >= 0; i--) {
+            layout[2 * i + 1] = weightSums[i];
+
+            if (2 * i + 1 < count) {
+                layout[2 * i] = weightSums[2 * i + 1];
+
+                weightSums[i] += weightSums[2 * i + 1];
+            }
+
+            if (2 * i + 2 < count) {
+                weightSums[i] += weightSums[2 * i + 2];
+            }
+        }
+
+        weightSum = count == 0 ? 0 : weightSums[0];
+    }
+
+    /**
+     * Copies the entries of the tree. The tree must not change during the copy, which holds for the trees that
+     * lock in forEach, except ShardedWeightedList whose shards are copied one at a time.
+     */
+    public static FrozenWeightTree of(WeightTree tree) {
+        Collector collector = new Collector();
+
+        tree.forEach(collector);
+
+        return new FrozenWeightTree(collector.ids, collector.weights, collector.count);
+    }
+
+    private static final class Collector implements WeightConsumer {
+
+        String[] ids = new String[16];
+        int[] weights = new int[16];
+
+        int count = 0;
+
+        @Override
+        public void accept(String id, int weight) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                weights = Arrays.copyOf(weights, count * 2);
+            }
+
+            ids[count] = id;
+            weights[count] = weight;
+
+            count++;
+        }
+
+    }
+
+    public int weightSum() {
+        return weightSum;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public void forEach(WeightConsumer consumer) {
+        for (int i = 0; i < ids.length; i++) {
+            consumer.accept(ids[i], layout[2 * i + 1]);
+        }
+    }
+
+    public String select(int weight) {
+        if (weight < 0 || weight >= weightSum) {
+            return null;
+        }
+
+        int position = 0;
+
+        // The weight stays within the subtree of the position, so the right child exists whenever it is taken.
+        while (true) {
+            int leftWeightSum = layout[2 * position];
+
+            if (weight < leftWeightSum) {
+                position = 2 * position + 1;
+                continue;
+            }
+
+            weight -= leftWeightSum;
+
+            int ownWeight = layout[2 * position + 1];
+
+            if (weight < ownWeight) {
+                return ids[position];
+            }
+
+            weight -= ownWeight;
+
+            position = 2 * position + 2;
+        }
+    }
+
+    /**
+     * Selects the ids for all the weights, putting the id for weights[i] in ids[i].
+     * The descents are walked in groups, one step of every descent in the group at a time, so the cache misses of
+     * independent descents overlap instead of waiting on each other. This is the batch select to use for large
+     * trees, where the lower levels are rarely cached.
+     */
+    public void select(int[] weights, String[] ids) {
+        int[] positions = new int[LANES];
+        int[] remaining = new int[LANES];
+
+        for (int start = 0; start < weights.length; start += LANES) {
+            int lanes = Math.min(LANES, weights.length - start);
+
+            int active = 0;
+
+            for (int lane = 0; lane < lanes; lane++) {
+                int weight = weights[start + lane];
+
+                if (weight < 0 || weight >= weightSum) {
+                    ids[start + lane] = null;
+                    positions[lane] = -1;
+                }
+                else {
+                    positions[lane] = 0;
+                    remaining[lane] = weight;
+
+                    active++;
+                }
+            }
+
+            while (active > 0) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int position = positions[lane];
+
+                    if (position < 0) {
+                        continue;
+                    }
+
+                    int weight = remaining[lane];
+                    int leftWeightSum = layout[2 * position];
+
+                    if (weight < leftWeightSum) {
+                        positions[lane] = 2 * position + 1;
+                        continue;
+                    }
+
+                    weight -= leftWeightSum;
+
+                    int ownWeight = layout[2 * position + 1];
+
+                    if (weight < ownWeight) {
+                        ids[start + lane] = this.ids[position];
+                        positions[lane] = -1;
+
+                        active--;
+                        continue;
+                    }
+
+                    remaining[lane] = weight - ownWeight;
+                    positions[lane] = 2 * position + 2;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Arranges weights into the implicit layout of a complete binary tree where the children of position i are at
+ * 2i + 1 and 2i + 2 and no child outweighs its parent. This is the shape the trees converge to when they are
+ * filled by insert, so it is used to build them in a single pass instead.
+ */
+public class HeapLayout {
+
+    /**
+     * Subtrees smaller than this are heapified by the task that reaches them instead of being split further.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private static final class HeapifyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] weights;
+        private final int[] order;
+
+        private final int position;
+
+        private HeapifyTask(int[] weights, int[] order, int position) {
+            this.weights = weights;
+            this.order = order;
+
+            this.position = position;
+        }
+
+        @Override
+        protected void compute() {
+            if (subtreeSize(position, order.length) < PARALLEL_THRESHOLD) {
+                heapify(weights, order, position);
+                return;
+            }
+
+            HeapifyTask left = new HeapifyTask(weights, order, 2 * position + 1);
+            left.fork();
+
+            new HeapifyTask(weights, order, 2 * position + 2).compute();
+
+            left.join();
+
+            siftDown(weights, order, position, order.length);
+        }
+
+    }
+
+    private HeapLayout() {
+
+    }
+
+    /**
+     * Returns the indices of the weights in heap order using Floyd's bottom-up heap construction, which is linear.
+     */
+    public static int[] arrange(int[] weights) {
+        int[] order = new int[weights.length];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        for (int i = order.length / 2 - 1; i >= 0; i--) {
+            siftDown(weights, order, i, order.length);
+        }
+
+        return order;
+    }
+
+    /**
+     * Same as arrange but the subtrees are heapified in parallel on the pool. Sifting down a position only moves
+     * entries within its own subtree, so the two subtrees of a position are independent and the result is exactly
+     * the order arrange returns.
+     */
+    public static int[] arrangeParallel(int[] weights, ForkJoinPool pool) {
+        int[] order = new int[weights.length];
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                Arrays.parallelSetAll(order, i -> i);
+            }
+        });
+
+        if (order.length > 1) {
+            pool.invoke(new HeapifyTask(weights, order, 0));
+        }
+
+        return order;
+    }
+
+    /**
+     * Returns the number of positions in the subtree of the position to within a factor of two.
+     */
+    static int subtreeSize(int position, int length) {
+        return length >>> (31 - Integer.numberOfLeadingZeros(position + 1));
+    }
+
+    /**
+     * Heapifies the subtree of the position bottom-up, children before their parent.
+     */
+    private static void heapify(int[] weights, int[] order, int position) {
+        if (2 * position + 1 >= order.length) {
+            return;
+        }
+
+        heapify(weights, order, 2 * position + 1);
+        heapify(weights, order, 2 * position + 2);
+
+        siftDown(weights, order, position, order.length);
+    }
+
+    static void siftDown(int[] weights, int[] order, int position, int length) {
+        int index = order[position];
+
+        while (true) {
+            int child = 2 * position + 1;
+
+            if (child >= length) {
+                break;
+            }
+
+            if (child + 1 < length && weights[order[child + 1]] > weights[order[child]]) {
+                child++;
+            }
+
+            if (weights[order[child]] <= weights[index]) {
+                break;
+            }
+
+            order[position] = order[child];
+            position = child;
+        }
+
+        order[position] = index;
+    }
+
+}
@@ -0,0 +1,131 @@
+import java.util.*;
+
+public class LongIdBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+        reservedIdTest();
+    }
+
+    private static void randomTest() {
+        Map<Long, Integer> weightMap = new HashMap<>();
+        List<Long> ids = new ArrayList<>(200);
+        LongIdBalancedWeightTree tree = new LongIdBalancedWeightTree();
+
+        int weightSum = 0;
+
+        int nodeCount = 0;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || nodeCount == 0) {
+                // Negative ids and ids past the int range must hash like any other.
+                long id = RANDOM.nextLong();
+
+                if (id == LongIdBalancedWeightTree.NO_ID || weightMap.containsKey(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+
+                nodeCount++;
+            }
+            else if (rand == 1) {
+                long id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+
+                if (!tree.update(id, weight)) {
+                    throw new RuntimeException("Update did not find the id!");
+                }
+            } else {
+                long id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+
+                if (!tree.remove(id) || tree.remove(id) || tree.update(id, 1)) {
+                    throw new RuntimeException("Removed id is still in the tree!");
+                }
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        if (nodeCount != tree.size()) {
+            throw new RuntimeException("Size does not match!");
+        }
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    private static void reservedIdTest() {
+        LongIdBalancedWeightTree tree = new LongIdBalancedWeightTree();
+
+        try {
+            tree.insert(LongIdBalancedWeightTree.NO_ID, 1);
+
+            throw new RuntimeException("Reserved id was inserted!");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        if (tree.size() != 0 || tree.weightSum() != 0) {
+            throw new RuntimeException("Rejected insert changed the tree!");
+        }
+
+        System.out.println("Reserved id test passed");
+    }
+
+    private static void testTree(Map<Long, Integer> weightMap, int weightSum, LongIdBalancedWeightTree tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        if (tree.select(weightSum) != LongIdBalancedWeightTree.NO_ID) {
+            throw new RuntimeException("Weight sum selected an id!");
+        }
+
+        Map<Long, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            int r = RANDOM.nextInt(weightSum);
+
+            long selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        float deviationSum = 0;
+
+        for (long id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,436 @@
+import java.util.Arrays;
+
+/**
+ * ArrayBalancedWeightTree but the ids are 64-bit numbers like the uint ids of the contract.
+ * Nothing is boxed or hashed through Object methods, so insert, update, remove and select never allocate
+ * once the arrays have grown to the size of the list.
+ */
+public class LongIdBalancedWeightTree {
+
+    /**
+     * Returned by select when the weight is equal or greater than the weight sum, like the 0 of the contract.
+     * It is reserved and cannot be inserted.
+     */
+    public static final long NO_ID = 0;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] weights = new int[INITIAL_CAPACITY];
+    private int[] weightSums = new int[INITIAL_CAPACITY];
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] leftChildren = new int[INITIAL_CAPACITY];
+    private int[] rightChildren = new int[INITIAL_CAPACITY];
+
+    private boolean[] isLeftChild = new boolean[INITIAL_CAPACITY];
+
+    private int counter = 0;
+    private int freeSlot = 0;
+    private int size = 0;
+
+    private int root = 0;
+
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    private final TreeStatistics statistics = new TreeStatistics();
+
+    public int weightSum() {
+        return weightSums[root];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    public long select(int weight) {
+        if (root == 0) {
+            return NO_ID;
+        }
+
+        int probe = root;
+
+        while (true) {
+            int leftWeightSum = weightSums[leftChildren[probe]];
+
+            if (leftWeightSum > weight) {
+                probe = leftChildren[probe];
+                continue;
+            }
+
+            weight -= leftWeightSum;
+
+            if (weights[probe] > weight) {
+                return ids[probe];
+            }
+
+            weight -= weights[probe];
+
+            if (weightSums[rightChildren[probe]] > weight) {
+                probe = rightChildren[probe];
+            }
+            else {
+                return NO_ID;
+            }
+        }
+    }
+
+    public void insert(long id, int weight) {
+        if (id == NO_ID) {
+            throw new IllegalArgumentException("Id " + NO_ID + " is reserved for no selection");
+        }
+
+        int node = allocate();
+
+        ids[node] = id;
+        weights[node] = weight;
+        weightSums[node] = weight;
+
+        index(node);
+
+        if (root == 0) {
+            root = node;
+
+            statistics.inserted(0, weight);
+            return;
+        }
+
+        int depth = 1;
+
+        int probe = root;
+
+        while (true) {
+            weightSums[probe] += weight;
+
+            if (leftChildren[probe] == 0) {
+                isLeftChild[node] = true;
+                parents[node] = probe;
+
+                leftChildren[probe] = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return;
+            }
+            else if (rightChildren[probe] == 0) {
+                isLeftChild[node] = false;
+                parents[node] = probe;
+
+                rightChildren[probe] = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return;
+            }
+            else if (weightSums[leftChildren[probe]] > weightSums[rightChildren[probe]]) {
+                probe = rightChildren[probe];
+            }
+            else {
+                probe = leftChildren[probe];
+            }
+
+            depth++;
+        }
+    }
+
+    private void promote(int node) {
+        int probe = node;
+
+        while (parents[probe] != 0 && weights[probe] > weights[parents[probe]]) {
+            statistics.promoteSwapped(weights[probe], weights[parents[probe]]);
+
+            swap(parents[probe], probe);
+
+            probe = parents[probe];
+        }
+    }
+
+    public boolean remove(long id) {
+        int position = find(id);
+
+        if (position < 0) {
+            return false;
+        }
+
+        int node = index[position];
+
+        unindex(position);
+
+        int depth = 0;
+
+        int probe = node;
+
+        while (parents[probe] != 0) {
+            weightSums[parents[probe]] -= weights[node];
+
+            probe = parents[probe];
+
+            depth++;
+        }
+
+        statistics.removed(depth, weights[node]);
+
+        pullUp(node, depth);
+
+        return true;
+    }
+
+    private void pullUp(int node, int depth) {
+        int probe = node;
+
+        while (true) {
+            int child;
+
+            if (leftChildren[probe] == 0) {
+                if (rightChildren[probe] == 0) {
+                    if (parents[probe] == 0) {
+                        root = 0;
+                    }
+                    else if (isLeftChild[probe]) {
+                        leftChildren[parents[probe]] = 0;
+                    }
+                    else {
+                        rightChildren[parents[probe]] = 0;
+                    }
+
+                    statistics.cut(depth);
+
+                    release(probe);
+                    return;
+                }
+
+                child = rightChildren[probe];
+            }
+            else if (rightChildren[probe] == 0 || weights[leftChildren[probe]] > weights[rightChildren[probe]]) {
+                child = leftChildren[probe];
+            }
+            else {
+                child = rightChildren[probe];
+            }
+
+            index[positionOf(child)] = probe;
+
+            ids[probe] = ids[child];
+            weights[probe] = weights[child];
+            weightSums[probe] = weightSums[leftChildren[probe]] + weightSums[rightChildren[probe]];
+
+            statistics.pulledUp(weights[probe]);
+
+            probe = child;
+
+            depth++;
+        }
+    }
+
+    public boolean update(long id, int weight) {
+        int position = find(id);
+
+        if (position < 0) {
+            return false;
+        }
+
+        int node = index[position];
+
+        int weightDiff = weight - weights[node];
+
+        weights[node] = weight;
+        weightSums[node] += weightDiff;
+
+        int depth = 0;
+
+        int probe = node;
+
+        while (parents[probe] != 0) {
+            weightSums[parents[probe]] += weightDiff;
+
+            probe = parents[probe];
+
+            depth++;
+        }
+
+        statistics.updated(depth, weightDiff);
+
+        if (weightDiff > 0) {
+            promote(node);
+        }
+        else {
+            demote(node);
+        }
+
+        return true;
+    }
+
+    private void demote(int node) {
+        int probe = node;
+
+        while (true) {
+            int child = weights[leftChildren[probe]] > weights[rightChildren[probe]] ? leftChildren[probe] : rightChildren[probe];
+
+            // A missing child resolves to slot 0 whose weight never beats a real node.
+            if (weights[child] <= weights[probe]) {
+                return;
+            }
+
+            statistics.demoteSwapped(weights[child], weights[probe]);
+
+            swap(probe, child);
+
+            probe = child;
+        }
+    }
+
+    private void swap(int parent, int child) {
+        int parentPosition = positionOf(parent);
+        int childPosition = positionOf(child);
+
+        index[parentPosition] = child;
+        index[childPosition] = parent;
+
+        long id = ids[parent];
+        ids[parent] = ids[child];
+        ids[child] = id;
+
+        int weight = weights[parent];
+        weights[parent] = weights[child];
+        weights[child] = weight;
+
+        weightSums[child] += weight - weights[parent];
+    }
+
+    private int allocate() {
+        size++;
+
+        if (freeSlot != 0) {
+            int slot = freeSlot;
+            freeSlot = parents[slot];
+            parents[slot] = 0;
+
+            return slot;
+        }
+
+        if (++counter == weights.length) {
+            grow(weights.length * 2);
+        }
+
+        return counter;
+    }
+
+    private void release(int slot) {
+        size--;
+
+        ids[slot] = 0;
+        weights[slot] = 0;
+        weightSums[slot] = 0;
+
+        leftChildren[slot] = 0;
+        rightChildren[slot] = 0;
+
+        parents[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        weightSums = Arrays.copyOf(weightSums, capacity);
+
+        parents = Arrays.copyOf(parents, capacity);
+        leftChildren = Arrays.copyOf(leftChildren, capacity);
+        rightChildren = Arrays.copyOf(rightChildren, capacity);
+
+        isLeftChild = Arrays.copyOf(isLeftChild, capacity);
+    }
+
+    private static int hash(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private int find(long id) {
+        int mask = index.length - 1;
+
+        for (int position = hash(id) & mask; ; position = (position + 1) & mask) {
+            if (index[position] == 0) {
+                return -1;
+            }
+
+            if (ids[index[position]] == id) {
+                return position;
+            }
+        }
+    }
+
+    private int positionOf(int slot) {
+        int mask = index.length - 1;
+
+        int position = hash(ids[slot]) & mask;
+
+        while (index[position] != slot) {
+            position = (position + 1) & mask;
+        }
+
+        return position;
+    }
+
+    private void index(int slot) {
+        if (size * 2 > index.length) {
+            int[] oldIndex = index;
+
+            index = new int[oldIndex.length * 2];
+
+            for (int oldSlot: oldIndex) {
+                if (oldSlot != 0) {
+                    place(oldSlot);
+                }
+            }
+        }
+
+        place(slot);
+    }
+
+    private void place(int slot) {
+        int mask = index.length - 1;
+
+        int position = hash(ids[slot]) & mask;
+
+        while (index[position] != 0) {
+            position = (position + 1) & mask;
+        }
+
+        index[position] = slot;
+    }
+
+    private void unindex(int position) {
+        int mask = index.length - 1;
+
+        int hole = position;
+        int probe = position;
+
+        while (true) {
+            probe = (probe + 1) & mask;
+
+            int slot = index[probe];
+
+            if (slot == 0) {
+                break;
+            }
+
+            int home = hash(ids[slot]) & mask;
+
+            if (((probe - home) & mask) >= ((probe - hole) & mask)) {
+                index[hole] = slot;
+                hole = probe;
+            }
+        }
+
+        index[hole] = 0;
+    }
+
+}
@@ -0,0 +1,153 @@
+import java.util.*;
+
+public class LongWeightBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+        intBoundaryTest();
+    }
+
+    /**
+     * Weights between 2^39 and 2^40, so the weight sum is far past the int range.
+     */
+    private static void randomTest() {
+        Map<String, Long> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        LongWeightBalancedWeightTree tree = new LongWeightBalancedWeightTree();
+
+        long weightSum = 0;
+
+        int nodeCount = 0;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || nodeCount == 0) {
+                String id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                long weight = RANDOM.nextLong(1L << 39) + (1L << 39);
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+
+                nodeCount++;
+            }
+            else if (rand == 1) {
+                String id = ids.get(RANDOM.nextInt(ids.size()));
+                long weight = RANDOM.nextLong(1L << 39) + (1L << 39);
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+                tree.remove(id);
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        if (weightSum <= Integer.MAX_VALUE) {
+            throw new RuntimeException("Weight sum did not leave the int range!");
+        }
+
+        testTree(weightMap, weightSum, tree);
+    }
+
+    /**
+     * Entries whose weights add up right across 2^31, where an int weight sum would wrap around.
+     */
+    private static void intBoundaryTest() {
+        LongWeightBalancedWeightTree tree = new LongWeightBalancedWeightTree();
+
+        tree.insert("A", Integer.MAX_VALUE);
+        tree.insert("B", 1);
+        tree.insert("C", Integer.MAX_VALUE);
+
+        long weightSum = 2L * Integer.MAX_VALUE + 1;
+
+        if (tree.weightSum() != weightSum) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        Set<String> selected = new HashSet<>();
+
+        // Whatever the order of the ranges, the range of width 1 is at 0, 2^31 - 1 or the end, and the two wide
+        // ranges hold the points on both sides of 2^31 - 1.
+        for (long weight: new long[] { 0, Integer.MAX_VALUE - 1L, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, weightSum - 1 }) {
+            String id = tree.select(weight);
+
+            if (id == null) {
+                throw new RuntimeException("Nothing selected for " + weight);
+            }
+
+            selected.add(id);
+        }
+
+        if (tree.select(weightSum) != null || !selected.equals(Set.of("A", "B", "C"))) {
+            throw new RuntimeException("Selection around 2^31 does not match!");
+        }
+
+        tree.update("A", 1L << 40);
+        tree.remove("B");
+
+        if (tree.weightSum() != (1L << 40) + Integer.MAX_VALUE || tree.select((1L << 40) + Integer.MAX_VALUE - 1) == null) {
+            throw new RuntimeException("Weight sum after update and remove does not match!");
+        }
+
+        System.out.println("Int boundary test passed");
+    }
+
+    private static void testTree(Map<String, Long> weightMap, long weightSum, LongWeightBalancedWeightTree tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        if (tree.select(weightSum) != null || tree.select(weightSum - 1) == null) {
+            throw new RuntimeException("Selection at the end of the weight sum does not match!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            long r = RANDOM.nextLong(weightSum);
+
+            String selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        double deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            double expected = weightMap.get(id).doubleValue() / weightSum;
+            double actual = selectionCounts.getOrDefault(id, 0).doubleValue() / SELECTION_TRY_COUNT;
+
+            double error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,423 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NonRecursiveBalancedWeightTree but the weights and weight sums are 64-bit, closer to the uint of the contract.
+ * This lets the total weight grow far past 2^31 without overflowing the sums near the root.
+ */
+public class LongWeightBalancedWeightTree {
+
+    private static class Node {
+
+        String id;
+        long weight;
+
+        Node parent;
+        Node leftChild;
+        Node rightChild;
+
+        boolean isLeftChild;
+
+        long weightSum;
+
+        private Node(String id, long weight) {
+            this.id = id;
+            this.weight = weight;
+
+            weightSum = weight;
+        }
+
+    }
+
+    private Node root = null;
+
+    private Map<String, Node> nodeMap = new HashMap<>();
+
+    private final TreeStatistics statistics = new TreeStatistics();
+
+    public long weightSum() {
+        return root == null ? 0 : root.weightSum;
+    }
+
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    public String select(long weight) {
+        if (root == null) {
+            return null;
+        }
+
+        Node probe = root;
+
+        while (true) {
+            if (probe.leftChild != null && probe.leftChild.weightSum > weight) {
+                probe = probe.leftChild;
+                continue;
+            }
+
+            weight -= probe.leftChild == null ? 0 : probe.leftChild.weightSum;
+
+            if (probe.weight > weight) {
+                return probe.id;
+            }
+
+            weight -= probe.weight;
+
+            if (probe.rightChild != null && probe.rightChild.weightSum > weight) {
+                probe = probe.rightChild;
+            }
+            else {
+                return null;
+            }
+        }
+    }
+
+    public void insert(String id, long weight) {
+        Node node = new Node(id, weight);
+        nodeMap.put(id, node);
+
+        if (root == null) {
+            root = node;
+
+            statistics.inserted(0, weight);
+            return;
+        }
+
+        int depth = 1;
+
+        Node probe = root;
+
+        while (true) {
+            probe.weightSum += node.weightSum;
+
+            if (probe.leftChild == null) {
+                node.isLeftChild = true;
+                node.parent = probe;
+
+                probe.leftChild = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return;
+            }
+            else if (probe.rightChild == null) {
+                node.isLeftChild = false;
+                node.parent = probe;
+
+                probe.rightChild = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return;
+            }
+            else if (probe.leftChild.weightSum > probe.rightChild.weightSum) {
+                probe = probe.rightChild;
+            }
+            else {
+                probe = probe.leftChild;
+            }
+
+            depth++;
+        }
+    }
+
+    private void promote(Node node) {
+        Node probe = node;
+
+        while (probe.parent != null && probe.weight > probe.parent.weight) {
+            statistics.promoteSwapped(probe.weight, probe.parent.weight);
+
+            String id = probe.id;
+            probe.id = probe.parent.id;
+            probe.parent.id = id;
+
+            long weight = probe.weight;
+            probe.weight = probe.parent.weight;
+            probe.parent.weight = weight;
+
+            probe.weightSum += probe.weight - weight;
+
+            nodeMap.put(probe.id, probe);
+            nodeMap.put(probe.parent.id, probe.parent);
+
+            probe = probe.parent;
+        }
+    }
+
+    public boolean remove(String id) {
+        Node node = nodeMap.remove(id);
+
+        if (node == null) {
+            return false;
+        }
+
+        int depth = 0;
+
+        Node probe = node;
+
+        while (probe.parent != null) {
+            probe.parent.weightSum -= node.weight;
+
+            probe = probe.parent;
+
+            depth++;
+        }
+
+        statistics.removed(depth, node.weight);
+
+        pullUp(node, depth);
+
+        return true;
+    }
+
+    private void pullUp(Node node, int depth) {
+        Node probe = node;
+
+        while (true) {
+            if (probe.leftChild == null) {
+                if (probe.rightChild == null) {
+                    if (probe.parent == null) {
+                        root = null;
+                    }
+                    else if (probe.isLeftChild) {
+                        probe.parent.leftChild = null;
+                    }
+                    else {
+                        probe.parent.rightChild = null;
+                    }
+
+                    statistics.cut(depth);
+
+                    return;
+                }
+                else {
+                    probe.id = probe.rightChild.id;
+                    nodeMap.put(probe.id, probe);
+
+                    probe.weight = probe.rightChild.weight;
+                    probe.weightSum = probe.rightChild.weightSum;
+
+                    statistics.pulledUp(probe.weight);
+
+                    probe = probe.rightChild;
+                }
+            }
+            else if (probe.rightChild == null) {
+                probe.id = probe.leftChild.id;
+                nodeMap.put(probe.id, probe);
+
+                probe.weight = probe.leftChild.weight;
+                probe.weightSum = probe.leftChild.weightSum;
+
+                statistics.pulledUp(probe.weight);
+
+                probe = probe.leftChild;
+            }
+            else if (probe.leftChild.weight > probe.rightChild.weight) {
+                probe.id = probe.leftChild.id;
+                nodeMap.put(probe.id, probe);
+
+                probe.weight = probe.leftChild.weight;
+                probe.weightSum = probe.leftChild.weightSum + probe.rightChild.weightSum;
+
+                statistics.pulledUp(probe.weight);
+
+                probe = probe.leftChild;
+            }
+            else {
+                probe.id = probe.rightChild.id;
+                nodeMap.put(probe.id, probe);
+
+                probe.weight = probe.rightChild.weight;
+                probe.weightSum = probe.leftChild.weightSum + probe.rightChild.weightSum;
+
+                statistics.pulledUp(probe.weight);
+
+                probe = probe.rightChild;
+            }
+
+            depth++;
+        }
+    }
+
+    public boolean update(String id, long weight) {
+        Node node = nodeMap.get(id);
+
+        if (node == null) {
+            return false;
+        }
+
+        long weightDiff = weight - node.weight;
+
+        node.weight = weight;
+        node.weightSum += weightDiff;
+
+        int depth = 0;
+
+        Node probe = node;
+
+        while (probe.parent != null) {
+            probe.parent.weightSum += weightDiff;
+
+            probe = probe.parent;
+
+            depth++;
+        }
+
+        statistics.updated(depth, weightDiff);
+
+        if (weightDiff > 0) {
+            promote(node);
+        }
+        else {
+            demote(node);
+        }
+
+        return true;
+    }
+
+    private void demote(Node node) {
+        Node probe = node;
+
+        while (true) {
+            if (probe.leftChild != null) {
+                if (probe.rightChild != null) {
+                    if (probe.leftChild.weight > probe.rightChild.weight) {
+                        if (probe.leftChild.weight > probe.weight) {
+                            statistics.demoteSwapped(probe.leftChild.weight, probe.weight);
+
+                            String id = probe.id;
+                            probe.id = probe.leftChild.id;
+                            probe.leftChild.id = id;
+
+                            long weight = probe.weight;
+                            probe.weight = probe.leftChild.weight;
+                            probe.leftChild.weight = weight;
+
+                            probe.leftChild.weightSum += weight - probe.weight;
+
+                            nodeMap.put(probe.id, probe);
+                            nodeMap.put(probe.leftChild.id, probe.leftChild);
+
+                            probe = probe.leftChild;
+                            continue;
+                        }
+
+                        return;
+                    } else if (probe.rightChild.weight > probe.weight) {
+                        statistics.demoteSwapped(probe.rightChild.weight, probe.weight);
+
+                        String id = probe.id;
+                        probe.id = probe.rightChild.id;
+                        probe.rightChild.id = id;
+
+                        long weight = probe.weight;
+                        probe.weight = probe.rightChild.weight;
+                        probe.rightChild.weight = weight;
+
+                        probe.rightChild.weightSum += weight - probe.weight;
+
+                        nodeMap.put(probe.id, probe);
+                        nodeMap.put(probe.rightChild.id, probe.rightChild);
+
+                        probe = probe.rightChild;
+                        continue;
+                    }
+
+                    return;
+                } else if (probe.leftChild.weight > probe.weight) {
+                    statistics.demoteSwapped(probe.leftChild.weight, probe.weight);
+
+                    String id = probe.id;
+                    probe.id = probe.leftChild.id;
+                    probe.leftChild.id = id;
+
+                    long weight = probe.weight;
+                    probe.weight = probe.leftChild.weight;
+                    probe.leftChild.weight = weight;
+
+                    probe.leftChild.weightSum += weight - probe.weight;
+
+                    nodeMap.put(probe.id, probe);
+                    nodeMap.put(probe.leftChild.id, probe.leftChild);
+
+                    probe = probe.leftChild;
+                    continue;
+                }
+
+                return;
+            } else if (probe.rightChild != null && probe.rightChild.weight > probe.weight) {
+                statistics.demoteSwapped(probe.rightChild.weight, probe.weight);
+
+                String id = probe.id;
+                probe.id = probe.rightChild.id;
+                probe.rightChild.id = id;
+
+                long weight = probe.weight;
+                probe.weight = probe.rightChild.weight;
+                probe.rightChild.weight = weight;
+
+                probe.rightChild.weightSum += weight - probe.weight;
+
+                nodeMap.put(probe.id, probe);
+                nodeMap.put(probe.rightChild.id, probe.rightChild);
+
+                probe = probe.rightChild;
+                continue;
+            }
+
+            return;
+        }
+    }
+
+    /**
+     * Divides every weight by 2^shift, or multiplies it by 2^-shift when the shift is negative, rounding down.
+     * Rounding keeps the order of the weights, so no node moves and only the weight sums are recomputed in a single
+     * post-order walk along the parent pointers.
+     * A shift of 64 or more clears every weight, while the shift operator would only shift by the count mod 64.
+     */
+    void shiftWeights(int shift) {
+        long weightedProbeLengthSum = 0;
+
+        Node previous = null;
+        Node probe = root;
+
+        while (probe != null) {
+            if (previous == probe.parent) {
+                if (probe.leftChild != null) {
+                    previous = probe;
+                    probe = probe.leftChild;
+                    continue;
+                }
+
+                if (probe.rightChild != null) {
+                    previous = probe;
+                    probe = probe.rightChild;
+                    continue;
+                }
+            }
+            else if (previous == probe.leftChild && probe.rightChild != null) {
+                previous = probe;
+                probe = probe.rightChild;
+                continue;
+            }
+
+            probe.weight = shift >= Long.SIZE ? 0 : shift >= 0 ? probe.weight >> shift : probe.weight << -shift;
+
+            probe.weightSum = probe.weight;
+            probe.weightSum += probe.leftChild == null ? 0 : probe.leftChild.weightSum;
+            probe.weightSum += probe.rightChild == null ? 0 : probe.rightChild.weightSum;
+
+            weightedProbeLengthSum += probe.weightSum;
+
+            previous = probe;
+            probe = probe.parent;
+        }
+
+        statistics.reweighed(weightSum(), weightedProbeLengthSum);
+    }
+
+}
@@ -0,0 +1,417 @@
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class NonRecursiveBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+        sampleDistinctTest();
+        hotPrefixTest();
+        batchSelectTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        NonRecursiveBalancedWeightTree tree = new NonRecursiveBalancedWeightTree();
+
+        randomMutations(weightMap, new ArrayList<>(), tree, 800);
+
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        System.out.println(weightMap.size() + " nodes with weight sum " + weightSum);
+
+        if (weightMap.size() != tree.size()) {
+            throw new RuntimeException("Size does not match!");
+        }
+
+        testTree(weightMap, weightSum, tree);
+
+        iterationTest(weightMap, tree);
+
+        // A built tree is complete, unlike one grown by inserts.
+        testTree(weightMap, weightSum, NonRecursiveBalancedWeightTree.build(weightMap));
+    }
+
+    private static void iterationTest(Map<String, Integer> weightMap, NonRecursiveBalancedWeightTree tree) {
+        Map<String, Integer> visited = new HashMap<>();
+
+        tree.forEach((id, weight) -> {
+            if (visited.put(id, weight) != null) {
+                throw new RuntimeException("Entry visited twice!");
+            }
+        });
+
+        if (!visited.equals(weightMap)) {
+            throw new RuntimeException("Iterated entries do not match!");
+        }
+
+        Map<String, Integer> streamed = tree.parallelStream()
+                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        if (!streamed.equals(weightMap) || tree.parallelStream().count() != weightMap.size()) {
+            throw new RuntimeException("Streamed entries do not match!");
+        }
+
+        // Splitting down to single entries must still hand out every entry exactly once.
+        Deque<Spliterator<Map.Entry<String, Integer>>> pending = new ArrayDeque<>();
+        pending.add(tree.spliterator());
+
+        Map<String, Integer> split = new HashMap<>();
+
+        while (!pending.isEmpty()) {
+            Spliterator<Map.Entry<String, Integer>> spliterator = pending.poll();
+            Spliterator<Map.Entry<String, Integer>> prefix = spliterator.trySplit();
+
+            if (prefix != null) {
+                pending.add(spliterator);
+                pending.add(prefix);
+                continue;
+            }
+
+            spliterator.forEachRemaining(entry -> {
+                if (split.put(entry.getKey(), entry.getValue()) != null) {
+                    throw new RuntimeException("Entry split twice!");
+                }
+            });
+        }
+
+        if (!split.equals(weightMap)) {
+            throw new RuntimeException("Split entries do not match!");
+        }
+
+        System.out.println("Iteration test passed");
+    }
+
+    private static void sampleDistinctTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        NonRecursiveBalancedWeightTree tree = new NonRecursiveBalancedWeightTree();
+
+        randomMutations(weightMap, new ArrayList<>(), tree, 800);
+
+        // Entries with zero weight can never be drawn.
+        for (int i = 0; i < 10; i++) {
+            weightMap.put("Z" + i, 0);
+            tree.insert("Z" + i, 0);
+        }
+
+        int positiveCount = weightMap.size() - 10;
+
+        String[] before = selectAll(tree);
+
+        for (int k: new int[] { 0, 1, 5, positiveCount, positiveCount + 5, weightMap.size() + 5 }) {
+            String[] sample = tree.sampleDistinct(k, RANDOM);
+
+            if (sample.length != Math.min(k, positiveCount)) {
+                throw new RuntimeException("Sampled " + sample.length + " ids for k = " + k);
+            }
+
+            Set<String> distinct = new HashSet<>();
+
+            for (String id: sample) {
+                if (!distinct.add(id) || weightMap.getOrDefault(id, 0) == 0) {
+                    throw new RuntimeException("Sampled id " + id + " twice or with zero weight!");
+                }
+            }
+
+            if (!Arrays.equals(before, selectAll(tree))) {
+                throw new RuntimeException("Sampling changed the tree!");
+            }
+        }
+
+        try {
+            tree.sampleDistinct(-1, RANDOM);
+
+            throw new RuntimeException("Negative sample size was accepted!");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        if (new NonRecursiveBalancedWeightTree().sampleDistinct(3, RANDOM).length != 0) {
+            throw new RuntimeException("Empty tree sampled an id!");
+        }
+
+        // A sample of one is a plain weighted selection.
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(tree.sampleDistinct(1, RANDOM)[0], 1, Integer::sum);
+        }
+
+        weightMap.values().removeIf(weight -> weight == 0);
+
+        testCounts(weightMap, selectionCounts);
+
+        System.out.println("Sample distinct test passed");
+    }
+
+    /**
+     * Runs a tree with the hot prefix next to a plain one and compares them at every weight after each insert,
+     * update and remove, so patched and rebuilt tables are both checked. Half the trees get the prefix only once
+     * they hold entries, and every tree is emptied at the end.
+     */
+    private static void hotPrefixTest() {
+        for (int levels: new int[] { 0, NonRecursiveBalancedWeightTree.MAX_HOT_LEVELS + 1 }) {
+            try {
+                new NonRecursiveBalancedWeightTree().enableHotPrefix(levels);
+
+                throw new RuntimeException("Hot prefix of " + levels + " levels was accepted!");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        for (int levels = 1; levels <= NonRecursiveBalancedWeightTree.MAX_HOT_LEVELS; levels++) {
+            List<String> ids = new ArrayList<>();
+            NonRecursiveBalancedWeightTree hot = new NonRecursiveBalancedWeightTree();
+            NonRecursiveBalancedWeightTree plain = new NonRecursiveBalancedWeightTree();
+
+            boolean enableLater = levels % 2 == 0;
+
+            if (!enableLater) {
+                hot.enableHotPrefix(levels);
+            }
+
+            for (int i = 0; i < 600; i++) {
+                if (enableLater && i == 100) {
+                    hot.enableHotPrefix(levels);
+                }
+
+                int rand = RANDOM.nextInt(4);
+                if (rand > 1 || ids.isEmpty()) {
+                    String id = "H" + i;
+
+                    // Widely spread weights, so inserts and updates swap entries in and out of the top levels.
+                    int weight = RANDOM.nextInt(1 << RANDOM.nextInt(12)) + 1;
+
+                    ids.add(id);
+                    hot.insert(id, weight);
+                    plain.insert(id, weight);
+                }
+                else if (rand == 1) {
+                    String id = ids.get(RANDOM.nextInt(ids.size()));
+                    int weight = RANDOM.nextInt(1 << RANDOM.nextInt(12)) + 1;
+
+                    hot.update(id, weight);
+                    plain.update(id, weight);
+                } else {
+                    String id = ids.remove(RANDOM.nextInt(ids.size()));
+
+                    hot.remove(id);
+                    plain.remove(id);
+                }
+
+                testHotPrefix(hot, plain);
+            }
+
+            while (!ids.isEmpty()) {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+
+                hot.remove(id);
+                plain.remove(id);
+
+                testHotPrefix(hot, plain);
+            }
+
+            if (hot.select(0) != null) {
+                throw new RuntimeException("Empty tree selected an id!");
+            }
+        }
+
+        System.out.println("Hot prefix test passed");
+    }
+
+    private static void testHotPrefix(NonRecursiveBalancedWeightTree hot, NonRecursiveBalancedWeightTree plain) {
+        if (!Arrays.equals(selectAll(hot), selectAll(plain))) {
+            throw new RuntimeException("Hot prefix selection does not match!");
+        }
+    }
+
+    /**
+     * Batch select sorts the weights and walks between neighbouring answers, so it is checked against single
+     * selects on weights in random order, with duplicates, both ends of the weight sum and weights past it.
+     */
+    private static void batchSelectTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        NonRecursiveBalancedWeightTree tree = new NonRecursiveBalancedWeightTree();
+
+        String[] empty = { "stale" };
+
+        tree.select(new int[] { 0 }, empty);
+
+        if (empty[0] != null) {
+            throw new RuntimeException("Empty tree selected an id in a batch!");
+        }
+
+        randomMutations(weightMap, new ArrayList<>(), tree, 800);
+
+        int weightSum = tree.weightSum();
+
+        for (int round = 0; round < 100; round++) {
+            int[] weights = new int[RANDOM.nextInt(200) + 1];
+
+            for (int i = 0; i < weights.length; i++) {
+                int rand = RANDOM.nextInt(10);
+
+                if (rand == 0) {
+                    weights[i] = 0;
+                }
+                else if (rand == 1) {
+                    weights[i] = weightSum - 1;
+                }
+                else if (rand == 2) {
+                    weights[i] = weightSum + RANDOM.nextInt(10);
+                }
+                else if (rand == 3 && i > 0) {
+                    weights[i] = weights[RANDOM.nextInt(i)];
+                }
+                else {
+                    weights[i] = RANDOM.nextInt(weightSum);
+                }
+            }
+
+            String[] ids = new String[weights.length];
+
+            tree.select(weights, ids);
+
+            for (int i = 0; i < weights.length; i++) {
+                if (!Objects.equals(ids[i], tree.select(weights[i]))) {
+                    throw new RuntimeException("Batch selection for " + weights[i] + " does not match!");
+                }
+            }
+        }
+
+        // Every weight once, in random order.
+        List<Integer> order = new ArrayList<>();
+
+        for (int w = 0; w <= weightSum; w++) {
+            order.add(w);
+        }
+
+        Collections.shuffle(order, RANDOM);
+
+        int[] weights = order.stream().mapToInt(Integer::intValue).toArray();
+        String[] ids = new String[weights.length];
+
+        tree.select(weights, ids);
+
+        for (int i = 0; i < weights.length; i++) {
+            if (!Objects.equals(ids[i], tree.select(weights[i]))) {
+                throw new RuntimeException("Batch selection for " + weights[i] + " does not match!");
+            }
+        }
+
+        System.out.println("Batch select test passed");
+    }
+
+    private static String[] selectAll(NonRecursiveBalancedWeightTree tree) {
+        String[] ids = new String[tree.weightSum() + 1];
+
+        for (int w = 0; w < ids.length; w++) {
+            ids[w] = tree.select(w);
+        }
+
+        return ids;
+    }
+
+    private static void randomMutations(Map<String, Integer> weightMap, List<String> ids, NonRecursiveBalancedWeightTree tree, int count) {
+        for (int i = 0; i < count; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || ids.isEmpty()) {
+                String id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (weightMap.containsKey(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+            }
+            else if (rand == 1) {
+                String id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightMap.remove(id);
+                tree.remove(id);
+            }
+        }
+    }
+
+    private static void testTree(Map<String, Integer> weightMap, int weightSum, NonRecursiveBalancedWeightTree tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        if (tree.select(weightSum) != null) {
+            throw new RuntimeException("Weight sum selected an id!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(tree.select(RANDOM.nextInt(weightSum)), 1, Integer::sum);
+        }
+
+        testCounts(weightMap, selectionCounts);
+
+        for (String id: weightMap.keySet()) {
+            int cumulativeWeight = tree.cumulativeWeightBefore(id);
+
+            if (!id.equals(tree.select(cumulativeWeight)) || !id.equals(tree.select(cumulativeWeight + weightMap.get(id) - 1))) {
+                throw new RuntimeException("Cumulative weight does not match!");
+            }
+
+            if (tree.probability(id) != weightMap.get(id).doubleValue() / weightSum) {
+                throw new RuntimeException("Probability does not match!");
+            }
+        }
+
+        if (tree.cumulativeWeightBefore("missing") != -1 || tree.probability("missing") != 0) {
+            throw new RuntimeException("Missing id has a cumulative weight!");
+        }
+
+        System.out.println("Cumulative weight test passed");
+    }
+
+    private static void testCounts(Map<String, Integer> weightMap, Map<String, Integer> selectionCounts) {
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -1,11 +1,17 @@
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SimplifiedBalancedWeightTree but the recursive functions have been replaced with loops.
  * This helps to reduce the back stack size and reduce the probability of contract call fails.
  */
-public class NonRecursiveBalancedWeightTree {
+public class NonRecursiveBalancedWeightTree implements WeightTree {
 
     private static class Node {
 
@@ -29,20 +35,468 @@ public class NonRecursiveBalancedWeightTree {
 
     }
 
+    /**
+     * Spliterator over the entries of a set of subtrees, kept as a stack of pending work. A whole item stands for
+     * the node and all its descendants, otherwise only for the node itself. Split hands off the shallowest whole
+     * subtree, or when only one is left, its left subtree while keeping the node and its right subtree.
+     * Sizes are estimated from the depths, since the tree stays close to complete.
+     */
+    private static final class EntrySpliterator implements Spliterator<Map.Entry<String, Integer>> {
+
+        private final int treeSize;
+
+        private Node[] nodes = new Node[16];
+        private int[] depths = new int[16];
+        private boolean[] whole = new boolean[16];
+
+        private int count = 0;
+
+        private EntrySpliterator(Node node, int depth, int treeSize) {
+            this.treeSize = treeSize;
+
+            if (node != null) {
+                push(node, depth, true);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<String, Integer>> action) {
+            if (count == 0) {
+                return false;
+            }
+
+            count--;
+
+            Node node = nodes[count];
+            nodes[count] = null;
+
+            if (whole[count]) {
+                int depth = depths[count];
+
+                if (node.rightChild != null) {
+                    push(node.rightChild, depth + 1, true);
+                }
+
+                if (node.leftChild != null) {
+                    push(node.leftChild, depth + 1, true);
+                }
+            }
+
+            action.accept(Map.entry(node.id, node.weight));
+
+            return true;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<String, Integer>> trySplit() {
+            int shallowest = -1;
+
+            for (int i = 0; i < count; i++) {
+                if (whole[i] && (shallowest < 0 || depths[i] < depths[shallowest])) {
+                    shallowest = i;
+                }
+            }
+
+            if (shallowest < 0) {
+                return null;
+            }
+
+            Node node = nodes[shallowest];
+            int depth = depths[shallowest];
+
+            if (count > 1) {
+                System.arraycopy(nodes, shallowest + 1, nodes, shallowest, count - shallowest - 1);
+                System.arraycopy(depths, shallowest + 1, depths, shallowest, count - shallowest - 1);
+                System.arraycopy(whole, shallowest + 1, whole, shallowest, count - shallowest - 1);
+
+                nodes[--count] = null;
+
+                return new EntrySpliterator(node, depth, treeSize);
+            }
+
+            if (node.leftChild == null) {
+                return null;
+            }
+
+            whole[0] = false;
+
+            if (node.rightChild != null) {
+                push(node.rightChild, depth + 1, true);
+            }
+
+            return new EntrySpliterator(node.leftChild, depth + 1, treeSize);
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = 0;
+
+            for (int i = 0; i < count; i++) {
+                size += whole[i] ? Math.max(1, treeSize >>> depths[i]) : 1;
+            }
+
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+
+        private void push(Node node, int depth, boolean isWhole) {
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count * 2);
+                depths = Arrays.copyOf(depths, count * 2);
+                whole = Arrays.copyOf(whole, count * 2);
+            }
+
+            nodes[count] = node;
+            depths[count] = depth;
+            whole[count] = isWhole;
+
+            count++;
+        }
+
+    }
+
     private Node root = null;
 
     private Map<String, Node> nodeMap = new HashMap<>();
 
+    private final TreeStatistics statistics = new TreeStatistics();
+
+    // Hot prefix: the top levels flattened in order, see enableHotPrefix.
+    static final int MAX_HOT_LEVELS = 10;
+
+    private int hotLevels = 0;
+
+    private int[] hotBounds;
+    private String[] hotIds;
+    private Node[] hotFrontier;
+    private Node[] hotHeap;
+
+    /**
+     * Builds a tree from the weight map without going through insert.
+     * The entries are laid out as a complete heap-ordered tree and the weight sums are filled in bottom-up.
+     */
+    public static NonRecursiveBalancedWeightTree build(Map<String, Integer> weightMap) {
+        String[] ids = new String[weightMap.size()];
+        int[] weights = new int[weightMap.size()];
+
+        int i = 0;
+
+        for (Map.Entry<String, Integer> entry: weightMap.entrySet()) {
+            ids[i] = entry.getKey();
+            weights[i] = entry.getValue();
+
+            i++;
+        }
+
+        return build(ids, weights);
+    }
+
+    /**
+     * Same as build(Map) for parallel arrays of ids and weights. The uniqueness of the ids is not checked.
+     */
+    public static NonRecursiveBalancedWeightTree build(String[] ids, int[] weights) {
+        NonRecursiveBalancedWeightTree tree = new NonRecursiveBalancedWeightTree();
+
+        int[] order = HeapLayout.arrange(weights);
+
+        Node[] nodes = new Node[order.length];
+
+        tree.nodeMap = new HashMap<>((int) (order.length / 0.75f) + 1);
+
+        for (int i = 0; i < order.length; i++) {
+            nodes[i] = new Node(ids[order[i]], weights[order[i]]);
+
+            tree.nodeMap.put(nodes[i].id, nodes[i]);
+            tree.statistics.placed(31 - Integer.numberOfLeadingZeros(i + 1), nodes[i].weight);
+        }
+
+        for (int i = order.length - 1; i > 0; i--) {
+            Node node = nodes[i];
+            Node parent = nodes[(i - 1) / 2];
+
+            node.parent = parent;
+            node.isLeftChild = i % 2 == 1;
+
+            if (node.isLeftChild) {
+                parent.leftChild = node;
+            }
+            else {
+                parent.rightChild = node;
+            }
+
+            parent.weightSum += node.weightSum;
+        }
+
+        if (nodes.length > 0) {
+            tree.root = nodes[0];
+        }
+
+        return tree;
+    }
+
     public int weightSum() {
         return root == null ? 0 : root.weightSum;
     }
 
+    public int size() {
+        return nodeMap.size();
+    }
+
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Walks the tree in pre-order along the parent pointers, so neither a stack nor an iterator is allocated.
+     */
+    public void forEach(WeightConsumer consumer) {
+        Node probe = root;
+
+        while (probe != null) {
+            consumer.accept(probe.id, probe.weight);
+
+            if (probe.leftChild != null) {
+                probe = probe.leftChild;
+            }
+            else if (probe.rightChild != null) {
+                probe = probe.rightChild;
+            }
+            else {
+                // Climb until the probe is a left child with a right sibling, which is the next subtree to walk.
+                while (probe.parent != null && (!probe.isLeftChild || probe.parent.rightChild == null)) {
+                    probe = probe.parent;
+                }
+
+                probe = probe.parent == null ? null : probe.parent.rightChild;
+            }
+        }
+    }
+
+    /**
+     * Returns a spliterator over the entries that splits the tree at subtree boundaries for parallel streams.
+     * The tree must not change while the spliterator is in use.
+     */
+    public Spliterator<Map.Entry<String, Integer>> spliterator() {
+        return new EntrySpliterator(root, 0, size());
+    }
+
+    public Stream<Map.Entry<String, Integer>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Returns the smallest weight for which select returns the id, which is the sum of the weights of all the
+     * entries before it in select order, or -1 if there is no entry with the id.
+     */
+    public int cumulativeWeightBefore(String id) {
+        Node node = nodeMap.get(id);
+
+        if (node == null) {
+            return -1;
+        }
+
+        int weight = node.leftChild == null ? 0 : node.leftChild.weightSum;
+
+        Node probe = node;
+
+        while (probe.parent != null) {
+            if (!probe.isLeftChild) {
+                weight += probe.parent.weight;
+                weight += probe.parent.leftChild == null ? 0 : probe.parent.leftChild.weightSum;
+            }
+
+            probe = probe.parent;
+        }
+
+        return weight;
+    }
+
+    /**
+     * Returns the probability that select returns the id for a uniformly drawn weight, or 0 if there is no entry
+     * with the id.
+     */
+    public double probability(String id) {
+        Node node = nodeMap.get(id);
+
+        if (node == null || root.weightSum == 0) {
+            return 0;
+        }
+
+        return (double) node.weight / root.weightSum;
+    }
+
+    /**
+     * Copies the ids and weights of all the entries into the arrays, which must have room for size() entries.
+     */
+    void entries(String[] ids, int[] weights) {
+        int i = 0;
+
+        for (Node node: nodeMap.values()) {
+            ids[i] = node.id;
+            weights[i] = node.weight;
+
+            i++;
+        }
+    }
+
+    /**
+     * Flattens the top levels of the tree into a table that select searches before it touches any node.
+     * The table lists in order the nodes of the top levels and the subtrees hanging below them, each with the
+     * cumulative weight up to its end, so select is a binary search over one int array and a descent into a
+     * subtree only for the weights that fall below the top levels. Since heavy entries are kept near the root,
+     * with skewed weights most selects end in the table.
+     * <p>
+     * Weight changes that do not move entries in or out of the top levels are patched into the table, which costs
+     * a pass over it, and other changes rebuild it right away. Select only ever reads the table, so readers sharing
+     * a lock never write to the tree.
+     * Levels from 3 to 6 keep the table within a few cache lines. Every write may pass over the whole table, so
+     * levels are limited to MAX_HOT_LEVELS, where the table takes 8 KB and still fits in the L1 cache.
+     */
+    public void enableHotPrefix(int levels) {
+        if (levels < 1 || levels > MAX_HOT_LEVELS) {
+            throw new IllegalArgumentException("Levels must be between 1 and " + MAX_HOT_LEVELS + ": " + levels);
+        }
+
+        hotLevels = levels;
+
+        // One spare item at the end makes the length a power of two for the search, it is never reached.
+        hotBounds = new int[2 << levels];
+        hotIds = new String[(1 << levels) - 1];
+        hotFrontier = new Node[1 << levels];
+        hotHeap = new Node[(2 << levels) - 1];
+
+        rebuildHotPrefix();
+    }
+
+    public void disableHotPrefix() {
+        hotLevels = 0;
+
+        hotBounds = null;
+        hotIds = null;
+        hotFrontier = null;
+        hotHeap = null;
+    }
+
     public String select(int weight) {
-        if (root == null) {
+        if (hotLevels > 0 && weight >= 0) {
+            return selectHot(weight);
+        }
+
+        Node node = selectNode(weight);
+
+        return node == null ? null : node.id;
+    }
+
+    private String selectHot(int weight) {
+        if (weight >= weightSum()) {
             return null;
         }
 
-        Node probe = root;
+        // Fixed steps with a conditional move instead of a branch, as the steps taken are as random as the weight.
+        int low = 0;
+
+        for (int step = hotBounds.length >>> 1; step > 0; step >>>= 1) {
+            low = hotBounds[low + step - 1] <= weight ? low + step : low;
+        }
+
+        // Odd items are the nodes of the top levels and even items the subtrees below them.
+        if ((low & 1) != 0) {
+            return hotIds[low >>> 1];
+        }
+
+        Node node = selectNode(hotFrontier[low >>> 1], low == 0 ? weight : weight - hotBounds[low - 1]);
+
+        return node == null ? null : node.id;
+    }
+
+    /**
+     * Lays out the top levels in heap order first, then puts every node at its in-order item. The item of the
+     * node at position p of level d is (2p + 1) * 2^(levels - d) - 1, and missing nodes get an empty item.
+     */
+    private void rebuildHotPrefix() {
+        Node[] heap = hotHeap;
+
+        heap[0] = root;
+
+        for (int i = 0; i < heap.length / 2; i++) {
+            heap[2 * i + 1] = heap[i] == null ? null : heap[i].leftChild;
+            heap[2 * i + 2] = heap[i] == null ? null : heap[i].rightChild;
+        }
+
+        for (int i = 0; i < heap.length; i++) {
+            Node node = heap[i];
+
+            int level = 31 - Integer.numberOfLeadingZeros(i + 1);
+            int position = i + 1 - (1 << level);
+
+            int item = ((2 * position + 1) << (hotLevels - level)) - 1;
+
+            if (level < hotLevels) {
+                hotIds[item >>> 1] = node == null ? null : node.id;
+                hotBounds[item] = node == null ? 0 : node.weight;
+            }
+            else {
+                hotFrontier[item >>> 1] = node;
+                hotBounds[item] = node == null ? 0 : node.weightSum;
+            }
+
+            heap[i] = null;
+        }
+
+        for (int i = 1; i < heap.length; i++) {
+            hotBounds[i] += hotBounds[i - 1];
+        }
+    }
+
+    /**
+     * Brings the hot prefix up to date after the weight of the node at the depth changed by the difference.
+     * When the change moved entries within the top levels, or added or removed a node there or right below,
+     * the prefix is rebuilt instead, which must happen after the tree has its new shape.
+     */
+    private void touchHotPrefix(Node node, int depth, int weightDiff, boolean reshaped) {
+        if (hotLevels == 0) {
+            return;
+        }
+
+        if (reshaped) {
+            rebuildHotPrefix();
+            return;
+        }
+
+        Node probe = node;
+
+        for (int d = depth; d > hotLevels; d--) {
+            probe = probe.parent;
+        }
+
+        int level = Math.min(depth, hotLevels);
+        int position = 0;
+
+        for (int bit = 0; bit < level; bit++) {
+            if (!probe.isLeftChild) {
+                position |= 1 << bit;
+            }
+
+            probe = probe.parent;
+        }
+
+        for (int i = ((2 * position + 1) << (hotLevels - level)) - 1; i < hotBounds.length; i++) {
+            hotBounds[i] += weightDiff;
+        }
+    }
+
+    private Node selectNode(int weight) {
+        return selectNode(root, weight);
+    }
+
+    private Node selectNode(Node probe, int weight) {
+        if (probe == null) {
+            return null;
+        }
 
         while (true) {
             if (probe.leftChild != null && probe.leftChild.weightSum > weight) {
@@ -53,7 +507,7 @@ public class NonRecursiveBalancedWeightTree {
             weight -= probe.leftChild == null ? 0 : probe.leftChild.weightSum;
 
             if (probe.weight > weight) {
-                return probe.id;
+                return probe;
             }
 
             weight -= probe.weight;
@@ -67,15 +521,145 @@ public class NonRecursiveBalancedWeightTree {
         }
     }
 
+    /**
+     * Draws up to k distinct ids, each draw proportional to weight among the entries not drawn yet.
+     * A drawn entry is excluded by zeroing its weight and taking it off the weight sums of its ancestors, without
+     * any promote or demote, and every exclusion is undone before returning, so the tree comes out unchanged.
+     * Fewer than k ids are returned when there are not enough entries with a positive weight.
+     */
+    public String[] sampleDistinct(int k, RandomGenerator random) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Sample size must not be negative: " + k);
+        }
+
+        int count = Math.min(k, nodeMap.size());
+
+        String[] ids = new String[count];
+
+        Node[] excluded = new Node[count];
+        int[] excludedWeights = new int[count];
+
+        int picks = 0;
+
+        while (picks < count && root.weightSum > 0) {
+            Node node = selectNode(random.nextInt(root.weightSum));
+
+            ids[picks] = node.id;
+
+            excluded[picks] = node;
+            excludedWeights[picks] = node.weight;
+
+            picks++;
+
+            Node probe = node;
+
+            while (probe != null) {
+                probe.weightSum -= node.weight;
+
+                probe = probe.parent;
+            }
+
+            node.weight = 0;
+        }
+
+        for (int i = picks - 1; i >= 0; i--) {
+            Node node = excluded[i];
+
+            node.weight = excludedWeights[i];
+
+            Node probe = node;
+
+            while (probe != null) {
+                probe.weightSum += node.weight;
+
+                probe = probe.parent;
+            }
+        }
+
+        return picks == count ? ids : Arrays.copyOf(ids, picks);
+    }
+
+    /**
+     * Selects the ids for all the weights at once. The weights are visited in sorted order and each one starts
+     * from the node that answered the previous one, climbing only as far as needed before descending.
+     * This way the shared top levels of the tree are walked once for the whole batch.
+     * The id for weights[i] is put in ids[i], or null if it is equal or greater than the weight sum.
+     */
+    public void select(int[] weights, String[] ids) {
+        long[] order = new long[weights.length];
+
+        for (int i = 0; i < weights.length; i++) {
+            order[i] = ((long) weights[i] << 32) | i;
+        }
+
+        Arrays.sort(order);
+
+        Node probe = root;
+        int offset = 0;
+
+        for (long entry: order) {
+            int weight = (int) (entry >>> 32);
+            int position = (int) entry;
+
+            if (probe == null) {
+                ids[position] = null;
+                continue;
+            }
+
+            while (probe.parent != null && weight - offset >= probe.weightSum) {
+                if (!probe.isLeftChild) {
+                    offset -= probe.parent.weight + (probe.parent.leftChild == null ? 0 : probe.parent.leftChild.weightSum);
+                }
+
+                probe = probe.parent;
+            }
+
+            weight -= offset;
+
+            while (true) {
+                if (probe.leftChild != null && probe.leftChild.weightSum > weight) {
+                    probe = probe.leftChild;
+                    continue;
+                }
+
+                int leftWeightSum = probe.leftChild == null ? 0 : probe.leftChild.weightSum;
+
+                weight -= leftWeightSum;
+
+                if (probe.weight > weight) {
+                    ids[position] = probe.id;
+                    break;
+                }
+
+                weight -= probe.weight;
+
+                if (probe.rightChild != null && probe.rightChild.weightSum > weight) {
+                    offset += leftWeightSum + probe.weight;
+                    probe = probe.rightChild;
+                }
+                else {
+                    ids[position] = null;
+                    break;
+                }
+            }
+        }
+    }
+
     public void insert(String id, int weight) {
         Node node = new Node(id, weight);
         nodeMap.put(id, node);
 
         if (root == null) {
             root = node;
+
+            statistics.inserted(0, weight);
+
+            touchHotPrefix(node, 0, weight, true);
             return;
         }
 
+        int depth = 1;
+
         Node probe = root;
 
         while (true) {
@@ -87,7 +671,11 @@ public class NonRecursiveBalancedWeightTree {
 
                 probe.leftChild = node;
 
-                promote(node);
+                statistics.inserted(depth, weight);
+
+                int swaps = promote(node);
+
+                touchHotPrefix(node, depth, weight, depth <= hotLevels || swaps > 0 && depth - swaps < hotLevels);
                 return;
             }
             else if (probe.rightChild == null) {
@@ -96,7 +684,11 @@ public class NonRecursiveBalancedWeightTree {
 
                 probe.rightChild = node;
 
-                promote(node);
+                statistics.inserted(depth, weight);
+
+                int swaps = promote(node);
+
+                touchHotPrefix(node, depth, weight, depth <= hotLevels || swaps > 0 && depth - swaps < hotLevels);
                 return;
             }
             else if (probe.leftChild.weightSum > probe.rightChild.weightSum) {
@@ -105,13 +697,22 @@ public class NonRecursiveBalancedWeightTree {
             else {
                 probe = probe.leftChild;
             }
+
+            depth++;
         }
     }
 
-    private void promote(Node node) {
+    /**
+     * Returns the number of swaps, that is how many levels the weight of the node went up.
+     */
+    private int promote(Node node) {
         Node probe = node;
 
+        int swaps = 0;
+
         while (probe.parent != null && probe.weight > probe.parent.weight) {
+            statistics.promoteSwapped(probe.weight, probe.parent.weight);
+
             String id = probe.id;
             probe.id = probe.parent.id;
             probe.parent.id = id;
@@ -126,7 +727,11 @@ public class NonRecursiveBalancedWeightTree {
             nodeMap.put(probe.parent.id, probe.parent);
 
             probe = probe.parent;
+
+            swaps++;
         }
+
+        return swaps;
     }
 
     public boolean remove(String id) {
@@ -136,20 +741,35 @@ public class NonRecursiveBalancedWeightTree {
             return false;
         }
 
+        int depth = 0;
+
         Node probe = node;
 
         while (probe.parent != null) {
             probe.parent.weightSum -= node.weight;
 
             probe = probe.parent;
+
+            depth++;
+        }
+
+        statistics.removed(depth, node.weight);
+
+        // A node below the top levels is patched out before it is unlinked, while its parents still lead to it.
+        if (depth > hotLevels) {
+            touchHotPrefix(node, depth, -node.weight, false);
         }
 
-        pullUp(node);
+        pullUp(node, depth);
+
+        if (depth <= hotLevels) {
+            touchHotPrefix(node, depth, -node.weight, true);
+        }
 
         return true;
     }
 
-    private void pullUp(Node node) {
+    private void pullUp(Node node, int depth) {
         Node probe = node;
 
         while (true) {
@@ -165,6 +785,8 @@ public class NonRecursiveBalancedWeightTree {
                         probe.parent.rightChild = null;
                     }
 
+                    statistics.cut(depth);
+
                     return;
                 }
                 else {
@@ -174,6 +796,8 @@ public class NonRecursiveBalancedWeightTree {
                     probe.weight = probe.rightChild.weight;
                     probe.weightSum = probe.rightChild.weightSum;
 
+                    statistics.pulledUp(probe.weight);
+
                     probe = probe.rightChild;
                 }
             }
@@ -184,6 +808,8 @@ public class NonRecursiveBalancedWeightTree {
                 probe.weight = probe.leftChild.weight;
                 probe.weightSum = probe.leftChild.weightSum;
 
+                statistics.pulledUp(probe.weight);
+
                 probe = probe.leftChild;
             }
             else if (probe.leftChild.weight > probe.rightChild.weight) {
@@ -193,6 +819,8 @@ public class NonRecursiveBalancedWeightTree {
                 probe.weight = probe.leftChild.weight;
                 probe.weightSum = probe.leftChild.weightSum + probe.rightChild.weightSum;
 
+                statistics.pulledUp(probe.weight);
+
                 probe = probe.leftChild;
             }
             else {
@@ -202,8 +830,12 @@ public class NonRecursiveBalancedWeightTree {
                 probe.weight = probe.rightChild.weight;
                 probe.weightSum = probe.leftChild.weightSum + probe.rightChild.weightSum;
 
+                statistics.pulledUp(probe.weight);
+
                 probe = probe.rightChild;
             }
+
+            depth++;
         }
     }
 
@@ -219,19 +851,30 @@ public class NonRecursiveBalancedWeightTree {
         node.weight = weight;
         node.weightSum += weightDiff;
 
+        int depth = 0;
+
         Node probe = node;
 
         while (probe.parent != null) {
             probe.parent.weightSum += weightDiff;
 
             probe = probe.parent;
+
+            depth++;
         }
 
+        statistics.updated(depth, weightDiff);
+
         if (weightDiff > 0) {
-            promote(node);
+            int swaps = promote(node);
+
+            touchHotPrefix(node, depth, weightDiff, swaps > 0 && depth - swaps < hotLevels);
         }
         else {
             demote(node);
+
+            // Demote swapped the node down if the id moved out of it.
+            touchHotPrefix(node, depth, weightDiff, depth < hotLevels && !id.equals(node.id));
         }
 
         return true;
@@ -245,6 +888,8 @@ public class NonRecursiveBalancedWeightTree {
                 if (probe.rightChild != null) {
                     if (probe.leftChild.weight > probe.rightChild.weight) {
                         if (probe.leftChild.weight > probe.weight) {
+                            statistics.demoteSwapped(probe.leftChild.weight, probe.weight);
+
                             String id = probe.id;
                             probe.id = probe.leftChild.id;
                             probe.leftChild.id = id;
@@ -264,6 +909,8 @@ public class NonRecursiveBalancedWeightTree {
 
                         return;
                     } else if (probe.rightChild.weight > probe.weight) {
+                        statistics.demoteSwapped(probe.rightChild.weight, probe.weight);
+
                         String id = probe.id;
                         probe.id = probe.rightChild.id;
                         probe.rightChild.id = id;
@@ -283,6 +930,8 @@ public class NonRecursiveBalancedWeightTree {
 
                     return;
                 } else if (probe.leftChild.weight > probe.weight) {
+                    statistics.demoteSwapped(probe.leftChild.weight, probe.weight);
+
                     String id = probe.id;
                     probe.id = probe.leftChild.id;
                     probe.leftChild.id = id;
@@ -302,6 +951,8 @@ public class NonRecursiveBalancedWeightTree {
 
                 return;
             } else if (probe.rightChild != null && probe.rightChild.weight > probe.weight) {
+                statistics.demoteSwapped(probe.rightChild.weight, probe.weight);
+
                 String id = probe.id;
                 probe.id = probe.rightChild.id;
                 probe.rightChild.id = id;
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class OffHeapBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) throws IOException {
+        randomTest();
+        reservedIdTest();
+    }
+
+    private static void reservedIdTest() {
+        OffHeapBalancedWeightTree tree = new OffHeapBalancedWeightTree();
+
+        try {
+            tree.insert(OffHeapBalancedWeightTree.NO_ID, 1);
+
+            throw new RuntimeException("Reserved id was inserted!");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        if (tree.size() != 0 || tree.weightSum() != 0) {
+            throw new RuntimeException("Rejected insert changed the tree!");
+        }
+
+        System.out.println("Reserved id test passed");
+    }
+
+    private static void randomTest() throws IOException {
+        Map<Long, Integer> weightMap = new HashMap<>();
+        List<Long> ids = new ArrayList<>(200);
+        OffHeapBalancedWeightTree tree = new OffHeapBalancedWeightTree();
+
+        int weightSum = 0;
+
+        long id = RANDOM.nextInt(1 << 16) + 1;
+        int weight = RANDOM.nextInt(100) + 1;
+        weightSum += weight;
+
+        weightMap.put(id, weight);
+        ids.add(id);
+        tree.insert(id, weight);
+
+        int nodeCount = 1;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1) {
+                id = RANDOM.nextInt(1 << 16) + 1;
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+
+                nodeCount++;
+            }
+            else if (rand == 1 && nodeCount > 0) {
+                id = ids.get(RANDOM.nextInt(ids.size()));
+                weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else if (nodeCount > 0) {
+                id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+                tree.remove(id);
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        if (nodeCount != tree.size()) {
+            throw new RuntimeException("Size does not match!");
+        }
+
+        testTree(weightMap, weightSum, tree);
+
+        Path path = Files.createTempFile("tree", ".snapshot");
+
+        try {
+            OffHeapSnapshot.write(tree, path);
+
+            OffHeapBalancedWeightTree snapshotTree = OffHeapSnapshot.open(path);
+
+            for (int w = 0; w < weightSum; w++) {
+                if (snapshotTree.select(w) != tree.select(w)) {
+                    throw new RuntimeException("Snapshot does not match!");
+                }
+            }
+
+            // The mapping is private, so changing the opened tree must leave the file as it was.
+            id = ids.remove(0);
+            weightSum -= weightMap.remove(id);
+            snapshotTree.remove(id);
+
+            id = ids.get(0);
+            weightSum += 1 - weightMap.get(id);
+            weightMap.put(id, 1);
+            snapshotTree.update(id, 1);
+
+            testTree(weightMap, weightSum, snapshotTree);
+
+            if (OffHeapSnapshot.open(path).weightSum() != tree.weightSum()) {
+                throw new RuntimeException("Snapshot file was changed!");
+            }
+
+            System.out.println("Snapshot test passed");
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void testTree(Map<Long, Integer> weightMap, int weightSum, OffHeapBalancedWeightTree tree) {
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        Map<Long, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            int r = RANDOM.nextInt(weightSum);
+
+            long selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        float deviationSum = 0;
+
+        for (long id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,612 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * LongIdBalancedWeightTree but the nodes and the id index live in direct byte buffers outside the heap.
+ * Every slot is a fixed 32 byte record and the records are kept in chunks of a million slots, so the only objects
+ * the garbage collector sees are the chunks themselves, about a hundred of them for a hundred million entries.
+ * The id index is an open-addressing table of int slots, chunked the same way.
+ * The byte order is fixed to little endian so OffHeapSnapshot files can be mapped on any machine.
+ * Slot 0 is the null node and its record stays zero, so missing children can be read without checks.
+ */
+public class OffHeapBalancedWeightTree {
+
+    /**
+     * Returned by select when the weight is equal or greater than the weight sum, like the 0 of the contract.
+     * It is reserved and cannot be inserted.
+     */
+    public static final long NO_ID = 0;
+
+    static final int RECORD_SIZE = 32;
+
+    static final int ID = 0;
+    static final int WEIGHT = 8;
+    static final int WEIGHT_SUM = 12;
+    static final int PARENT = 16;
+    static final int LEFT_CHILD = 20;
+    static final int RIGHT_CHILD = 24;
+    static final int FLAGS = 28;
+
+    static final int IS_LEFT_CHILD = 1;
+
+    static final int RECORD_CHUNK_SHIFT = 20;
+    static final int RECORD_CHUNK_MASK = (1 << RECORD_CHUNK_SHIFT) - 1;
+
+    static final int INDEX_CHUNK_SHIFT = 22;
+    static final int INDEX_CHUNK_MASK = (1 << INDEX_CHUNK_SHIFT) - 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private ByteBuffer[] records;
+    private int capacity;
+
+    private ByteBuffer[] index;
+    private int indexLength;
+
+    private int counter;
+    private int freeSlot;
+    private int size;
+
+    private int root;
+
+    private final TreeStatistics statistics;
+
+    public OffHeapBalancedWeightTree() {
+        statistics = new TreeStatistics();
+
+        records = new ByteBuffer[] { allocate(INITIAL_CAPACITY * RECORD_SIZE) };
+        capacity = INITIAL_CAPACITY;
+
+        indexLength = INITIAL_CAPACITY * 2;
+        index = allocateIndex(indexLength);
+    }
+
+    /**
+     * Takes over the chunks, counters and statistics of a tree, for example one written by OffHeapSnapshot.
+     */
+    OffHeapBalancedWeightTree(ByteBuffer[] records, int capacity, ByteBuffer[] index, int indexLength,
+                              int counter, int freeSlot, int size, int root, TreeStatistics statistics) {
+        this.records = records;
+        this.capacity = capacity;
+
+        this.index = index;
+        this.indexLength = indexLength;
+
+        this.counter = counter;
+        this.freeSlot = freeSlot;
+        this.size = size;
+
+        this.root = root;
+
+        this.statistics = statistics;
+    }
+
+    public int weightSum() {
+        return weightSum(root);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    public long select(int weight) {
+        if (root == 0) {
+            return NO_ID;
+        }
+
+        int probe = root;
+
+        while (true) {
+            int leftWeightSum = weightSum(leftChild(probe));
+
+            if (leftWeightSum > weight) {
+                probe = leftChild(probe);
+                continue;
+            }
+
+            weight -= leftWeightSum;
+
+            if (weight(probe) > weight) {
+                return id(probe);
+            }
+
+            weight -= weight(probe);
+
+            if (weightSum(rightChild(probe)) > weight) {
+                probe = rightChild(probe);
+            }
+            else {
+                return NO_ID;
+            }
+        }
+    }
+
+    public void insert(long id, int weight) {
+        if (id == NO_ID) {
+            throw new IllegalArgumentException("Id " + NO_ID + " is reserved for no selection");
+        }
+
+        int node = allocateSlot();
+
+        setId(node, id);
+        setWeight(node, weight);
+        setWeightSum(node, weight);
+
+        index(node);
+
+        if (root == 0) {
+            root = node;
+
+            statistics.inserted(0, weight);
+            return;
+        }
+
+        int depth = 1;
+
+        int probe = root;
+
+        while (true) {
+            setWeightSum(probe, weightSum(probe) + weight);
+
+            if (leftChild(probe) == 0) {
+                setLeftChild(node, true);
+                setParent(node, probe);
+
+                setLeftChild(probe, node);
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return;
+            }
+            else if (rightChild(probe) == 0) {
+                setLeftChild(node, false);
+                setParent(node, probe);
+
+                setRightChild(probe, node);
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                return;
+            }
+            else if (weightSum(leftChild(probe)) > weightSum(rightChild(probe))) {
+                probe = rightChild(probe);
+            }
+            else {
+                probe = leftChild(probe);
+            }
+
+            depth++;
+        }
+    }
+
+    private void promote(int node) {
+        int probe = node;
+
+        while (parent(probe) != 0 && weight(probe) > weight(parent(probe))) {
+            statistics.promoteSwapped(weight(probe), weight(parent(probe)));
+
+            swap(parent(probe), probe);
+
+            probe = parent(probe);
+        }
+    }
+
+    public boolean remove(long id) {
+        int position = find(id);
+
+        if (position < 0) {
+            return false;
+        }
+
+        int node = cell(position);
+
+        unindex(position);
+
+        int depth = 0;
+
+        int probe = node;
+
+        while (parent(probe) != 0) {
+            setWeightSum(parent(probe), weightSum(parent(probe)) - weight(node));
+
+            probe = parent(probe);
+
+            depth++;
+        }
+
+        statistics.removed(depth, weight(node));
+
+        pullUp(node, depth);
+
+        return true;
+    }
+
+    private void pullUp(int node, int depth) {
+        int probe = node;
+
+        while (true) {
+            int child;
+
+            if (leftChild(probe) == 0) {
+                if (rightChild(probe) == 0) {
+                    if (parent(probe) == 0) {
+                        root = 0;
+                    }
+                    else if (isLeftChild(probe)) {
+                        setLeftChild(parent(probe), 0);
+                    }
+                    else {
+                        setRightChild(parent(probe), 0);
+                    }
+
+                    statistics.cut(depth);
+
+                    release(probe);
+                    return;
+                }
+
+                child = rightChild(probe);
+            }
+            else if (rightChild(probe) == 0 || weight(leftChild(probe)) > weight(rightChild(probe))) {
+                child = leftChild(probe);
+            }
+            else {
+                child = rightChild(probe);
+            }
+
+            setCell(positionOf(child), probe);
+
+            setId(probe, id(child));
+            setWeight(probe, weight(child));
+            setWeightSum(probe, weightSum(leftChild(probe)) + weightSum(rightChild(probe)));
+
+            statistics.pulledUp(weight(probe));
+
+            probe = child;
+
+            depth++;
+        }
+    }
+
+    public boolean update(long id, int weight) {
+        int position = find(id);
+
+        if (position < 0) {
+            return false;
+        }
+
+        int node = cell(position);
+
+        int weightDiff = weight - weight(node);
+
+        setWeight(node, weight);
+        setWeightSum(node, weightSum(node) + weightDiff);
+
+        int depth = 0;
+
+        int probe = node;
+
+        while (parent(probe) != 0) {
+            setWeightSum(parent(probe), weightSum(parent(probe)) + weightDiff);
+
+            probe = parent(probe);
+
+            depth++;
+        }
+
+        statistics.updated(depth, weightDiff);
+
+        if (weightDiff > 0) {
+            promote(node);
+        }
+        else {
+            demote(node);
+        }
+
+        return true;
+    }
+
+    private void demote(int node) {
+        int probe = node;
+
+        while (true) {
+            int child = weight(leftChild(probe)) > weight(rightChild(probe)) ? leftChild(probe) : rightChild(probe);
+
+            // A missing child resolves to slot 0 whose weight never beats a real node.
+            if (weight(child) <= weight(probe)) {
+                return;
+            }
+
+            statistics.demoteSwapped(weight(child), weight(probe));
+
+            swap(probe, child);
+
+            probe = child;
+        }
+    }
+
+    private void swap(int parent, int child) {
+        int parentPosition = positionOf(parent);
+        int childPosition = positionOf(child);
+
+        setCell(parentPosition, child);
+        setCell(childPosition, parent);
+
+        long id = id(parent);
+        setId(parent, id(child));
+        setId(child, id);
+
+        int weight = weight(parent);
+        setWeight(parent, weight(child));
+        setWeight(child, weight);
+
+        setWeightSum(child, weightSum(child) + weight - weight(parent));
+    }
+
+    private int allocateSlot() {
+        size++;
+
+        if (freeSlot != 0) {
+            int slot = freeSlot;
+            freeSlot = parent(slot);
+            setParent(slot, 0);
+
+            return slot;
+        }
+
+        if (++counter == capacity) {
+            grow();
+        }
+
+        return counter;
+    }
+
+    private void release(int slot) {
+        size--;
+
+        ByteBuffer chunk = records[slot >>> RECORD_CHUNK_SHIFT];
+        int offset = (slot & RECORD_CHUNK_MASK) * RECORD_SIZE;
+
+        chunk.putLong(offset + ID, 0);
+        chunk.putLong(offset + WEIGHT, 0);
+        chunk.putLong(offset + PARENT, 0);
+        chunk.putLong(offset + RIGHT_CHILD, 0);
+
+        setParent(slot, freeSlot);
+        freeSlot = slot;
+    }
+
+    /**
+     * Doubles the only chunk while it is smaller than a full chunk, and adds a full chunk after that.
+     */
+    private void grow() {
+        if (capacity <= RECORD_CHUNK_MASK) {
+            ByteBuffer chunk = allocate(capacity * 2 * RECORD_SIZE);
+            chunk.put(0, records[0], 0, capacity * RECORD_SIZE);
+
+            records[0] = chunk;
+
+            capacity *= 2;
+        }
+        else {
+            records = Arrays.copyOf(records, records.length + 1);
+            records[records.length - 1] = allocate((RECORD_CHUNK_MASK + 1) * RECORD_SIZE);
+
+            capacity = records.length << RECORD_CHUNK_SHIFT;
+        }
+    }
+
+    static ByteBuffer allocate(int byteCount) {
+        return ByteBuffer.allocateDirect(byteCount).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static ByteBuffer[] allocateIndex(int length) {
+        ByteBuffer[] chunks = new ByteBuffer[Math.max(1, length >>> INDEX_CHUNK_SHIFT)];
+
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = allocate(Math.min(length, INDEX_CHUNK_MASK + 1) * Integer.BYTES);
+        }
+
+        return chunks;
+    }
+
+    ByteBuffer[] records() {
+        return records;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    ByteBuffer[] index() {
+        return index;
+    }
+
+    int indexLength() {
+        return indexLength;
+    }
+
+    int counter() {
+        return counter;
+    }
+
+    int freeSlot() {
+        return freeSlot;
+    }
+
+    int root() {
+        return root;
+    }
+
+    private long id(int slot) {
+        return records[slot >>> RECORD_CHUNK_SHIFT].getLong((slot & RECORD_CHUNK_MASK) * RECORD_SIZE + ID);
+    }
+
+    private void setId(int slot, long id) {
+        records[slot >>> RECORD_CHUNK_SHIFT].putLong((slot & RECORD_CHUNK_MASK) * RECORD_SIZE + ID, id);
+    }
+
+    private int weight(int slot) {
+        return field(slot, WEIGHT);
+    }
+
+    private void setWeight(int slot, int weight) {
+        setField(slot, WEIGHT, weight);
+    }
+
+    private int weightSum(int slot) {
+        return field(slot, WEIGHT_SUM);
+    }
+
+    private void setWeightSum(int slot, int weightSum) {
+        setField(slot, WEIGHT_SUM, weightSum);
+    }
+
+    private int parent(int slot) {
+        return field(slot, PARENT);
+    }
+
+    private void setParent(int slot, int parent) {
+        setField(slot, PARENT, parent);
+    }
+
+    private int leftChild(int slot) {
+        return field(slot, LEFT_CHILD);
+    }
+
+    private void setLeftChild(int slot, int leftChild) {
+        setField(slot, LEFT_CHILD, leftChild);
+    }
+
+    private int rightChild(int slot) {
+        return field(slot, RIGHT_CHILD);
+    }
+
+    private void setRightChild(int slot, int rightChild) {
+        setField(slot, RIGHT_CHILD, rightChild);
+    }
+
+    private boolean isLeftChild(int slot) {
+        return (field(slot, FLAGS) & IS_LEFT_CHILD) != 0;
+    }
+
+    private void setLeftChild(int slot, boolean isLeftChild) {
+        setField(slot, FLAGS, isLeftChild ? IS_LEFT_CHILD : 0);
+    }
+
+    private int field(int slot, int field) {
+        return records[slot >>> RECORD_CHUNK_SHIFT].getInt((slot & RECORD_CHUNK_MASK) * RECORD_SIZE + field);
+    }
+
+    private void setField(int slot, int field, int value) {
+        records[slot >>> RECORD_CHUNK_SHIFT].putInt((slot & RECORD_CHUNK_MASK) * RECORD_SIZE + field, value);
+    }
+
+    private int cell(int position) {
+        return index[position >>> INDEX_CHUNK_SHIFT].getInt((position & INDEX_CHUNK_MASK) * Integer.BYTES);
+    }
+
+    private void setCell(int position, int slot) {
+        index[position >>> INDEX_CHUNK_SHIFT].putInt((position & INDEX_CHUNK_MASK) * Integer.BYTES, slot);
+    }
+
+    static int hash(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private int find(long id) {
+        int mask = indexLength - 1;
+
+        for (int position = hash(id) & mask; ; position = (position + 1) & mask) {
+            if (cell(position) == 0) {
+                return -1;
+            }
+
+            if (id(cell(position)) == id) {
+                return position;
+            }
+        }
+    }
+
+    private int positionOf(int slot) {
+        int mask = indexLength - 1;
+
+        int position = hash(id(slot)) & mask;
+
+        while (cell(position) != slot) {
+            position = (position + 1) & mask;
+        }
+
+        return position;
+    }
+
+    private void index(int slot) {
+        if (size * 2L > indexLength) {
+            ByteBuffer[] oldIndex = index;
+            int oldIndexLength = indexLength;
+
+            indexLength *= 2;
+            index = allocateIndex(indexLength);
+
+            for (ByteBuffer chunk: oldIndex) {
+                for (int i = 0; i < Math.min(oldIndexLength, INDEX_CHUNK_MASK + 1); i++) {
+                    int oldSlot = chunk.getInt(i * Integer.BYTES);
+
+                    if (oldSlot != 0) {
+                        place(oldSlot);
+                    }
+                }
+            }
+        }
+
+        place(slot);
+    }
+
+    private void place(int slot) {
+        int mask = indexLength - 1;
+
+        int position = hash(id(slot)) & mask;
+
+        while (cell(position) != 0) {
+            position = (position + 1) & mask;
+        }
+
+        setCell(position, slot);
+    }
+
+    private void unindex(int position) {
+        int mask = indexLength - 1;
+
+        int hole = position;
+        int probe = position;
+
+        while (true) {
+            probe = (probe + 1) & mask;
+
+            int slot = cell(probe);
+
+            if (slot == 0) {
+                break;
+            }
+
+            int home = hash(id(slot)) & mask;
+
+            if (((probe - home) & mask) >= ((probe - hole) & mask)) {
+                setCell(hole, slot);
+                hole = probe;
+            }
+        }
+
+        setCell(hole, 0);
+    }
+
+}
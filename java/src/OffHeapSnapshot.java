@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Snapshot file of an OffHeapBalancedWeightTree that is opened by mapping it instead of reading it.
+ * The file is a 64 byte header followed by the node records in slot order and the cells of the id index, byte for
+ * byte as the tree keeps them in its chunks, and finally the tree statistics so they need not be measured again:
+ * <pre>
+ *   0  magic        long
+ *   8  version      int
+ *  12  record size  int
+ *  16  capacity     int   records in the file, padded to the capacity of the tree
+ *  20  counter      int
+ *  24  free slot    int
+ *  28  size         int
+ *  32  root         int
+ *  36  index length int
+ *  40  statistics   int   bytes of statistics
+ *  64  records      capacity * 32 bytes
+ *      index        index length * 4 bytes
+ *      statistics
+ * </pre>
+ * Open maps every chunk privately, so the tree can select right away and later mutations are copied on write and
+ * never reach the file. A snapshot is written to a temporary file that is forced to disk and then moved over the
+ * old snapshot, so a crash leaves either the old or the new snapshot behind and never a torn one.
+ */
+public final class OffHeapSnapshot {
+
+    private static final long MAGIC = 0x50414E5354574221L;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private OffHeapSnapshot() {
+
+    }
+
+    public static void write(OffHeapBalancedWeightTree tree, Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(OffHeapBalancedWeightTree.RECORD_SIZE);
+            header.putInt(tree.capacity());
+            header.putInt(tree.counter());
+            header.putInt(tree.freeSlot());
+            header.putInt(tree.size());
+            header.putInt(tree.root());
+            header.putInt(tree.indexLength());
+            header.putInt(tree.statistics().byteCount());
+
+            header.clear();
+
+            long position = write(channel, header, 0);
+
+            // Only the records up to the counter are used. The rest of the capacity is left as a hole in the file.
+            long usedBytes = (tree.counter() + 1L) * OffHeapBalancedWeightTree.RECORD_SIZE;
+
+            for (ByteBuffer chunk: tree.records()) {
+                int byteCount = (int) Math.min(chunk.capacity(), Math.max(0, usedBytes));
+
+                write(channel, chunk.duplicate().clear().limit(byteCount), position);
+
+                usedBytes -= chunk.capacity();
+                position += chunk.capacity();
+            }
+
+            for (ByteBuffer chunk: tree.index()) {
+                position = write(channel, chunk.duplicate().clear(), position);
+            }
+
+            ByteBuffer statistics = ByteBuffer.allocate(tree.statistics().byteCount()).order(ByteOrder.LITTLE_ENDIAN);
+            tree.statistics().writeTo(statistics);
+
+            write(channel, statistics.flip(), position);
+
+            channel.force(true);
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        forceDirectory(path.toAbsolutePath().getParent());
+    }
+
+    public static OffHeapBalancedWeightTree open(Path path) throws IOException {
+        // Private mappings need a writable channel even though nothing is ever written through them.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Snapshot " + path + " is truncated");
+                }
+            }
+
+            header.flip();
+
+            if (header.getLong() != MAGIC) {
+                throw new IOException(path + " is not a snapshot");
+            }
+
+            int version = header.getInt();
+            int recordSize = header.getInt();
+
+            if (version != VERSION || recordSize != OffHeapBalancedWeightTree.RECORD_SIZE) {
+                throw new IOException("Snapshot " + path + " has version " + version + " and record size " + recordSize);
+            }
+
+            int capacity = header.getInt();
+            int counter = header.getInt();
+            int freeSlot = header.getInt();
+            int size = header.getInt();
+            int root = header.getInt();
+            int indexLength = header.getInt();
+            int statisticsBytes = header.getInt();
+
+            long recordBytes = (long) capacity * OffHeapBalancedWeightTree.RECORD_SIZE;
+            long indexBytes = (long) indexLength * Integer.BYTES;
+
+            if (channel.size() < HEADER_SIZE + recordBytes + indexBytes + statisticsBytes) {
+                throw new IOException("Snapshot " + path + " is truncated");
+            }
+
+            int recordChunkSize = Math.min(capacity, OffHeapBalancedWeightTree.RECORD_CHUNK_MASK + 1);
+            ByteBuffer[] records = new ByteBuffer[capacity / recordChunkSize];
+
+            long position = HEADER_SIZE;
+
+            for (int i = 0; i < records.length; i++) {
+                records[i] = map(channel, position, recordChunkSize * OffHeapBalancedWeightTree.RECORD_SIZE);
+
+                position += recordChunkSize * OffHeapBalancedWeightTree.RECORD_SIZE;
+            }
+
+            int indexChunkSize = Math.min(indexLength, OffHeapBalancedWeightTree.INDEX_CHUNK_MASK + 1);
+            ByteBuffer[] index = new ByteBuffer[indexLength / indexChunkSize];
+
+            for (int i = 0; i < index.length; i++) {
+                index[i] = map(channel, position, indexChunkSize * Integer.BYTES);
+
+                position += indexChunkSize * Integer.BYTES;
+            }
+
+            ByteBuffer statistics = ByteBuffer.allocate(statisticsBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (statistics.hasRemaining()) {
+                channel.read(statistics, position + statistics.position());
+            }
+
+            return new OffHeapBalancedWeightTree(records, capacity, index, indexLength, counter, freeSlot, size, root,
+                    TreeStatistics.readFrom(statistics.flip()));
+        }
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        return position;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, int byteCount) throws IOException {
+        return channel.map(FileChannel.MapMode.PRIVATE, position, byteCount).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Makes the rename durable. Not every platform allows opening a directory, in which case this is skipped.
+     */
+    static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The move itself has happened, only its durability depends on the platform.
+        }
+    }
+
+}
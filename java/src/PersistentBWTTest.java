@@ -0,0 +1,153 @@
+import java.util.*;
+
+public class PersistentBWTTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        PersistentBalancedWeightTree tree = new PersistentBalancedWeightTree();
+
+        int weightSum = 0;
+
+        String id = UUID.randomUUID().toString().substring(0, 4);
+        int weight = RANDOM.nextInt(100) + 1;
+        weightSum += weight;
+
+        weightMap.put(id, weight);
+        ids.add(id);
+        tree.insert(id, weight);
+
+        int nodeCount = 1;
+
+        PersistentBalancedWeightTree.Snapshot snapshot = null;
+        Map<String, Integer> snapshotWeightMap = null;
+        int snapshotWeightSum = 0;
+
+        for (int i = 0; i < 800; i++) {
+            if (i == 400) {
+                snapshot = tree.snapshot();
+                snapshotWeightMap = new HashMap<>(weightMap);
+                snapshotWeightSum = weightSum;
+            }
+
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1) {
+                id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (ids.contains(id)) {
+                    continue;
+                }
+
+                weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                tree.insert(id, weight);
+
+                nodeCount++;
+            }
+            else if (rand == 1 && nodeCount > 0) {
+                id = ids.get(RANDOM.nextInt(ids.size()));
+                weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+                tree.update(id, weight);
+            } else if (nodeCount > 0) {
+                id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+                tree.remove(id);
+
+                nodeCount--;
+            }
+        }
+
+        System.out.println(nodeCount + " nodes with weight sum " + weightSum);
+
+        testTree(weightMap, weightSum, tree.snapshot());
+
+        System.out.println("Snapshot of " + snapshotWeightMap.size() + " nodes with weight sum " + snapshotWeightSum);
+
+        testTree(snapshotWeightMap, snapshotWeightSum, snapshot);
+
+        // A writer on another thread must get through while forEach is in the middle of the entries.
+        boolean[] writerDone = { false };
+
+        tree.forEach((entryId, entryWeight) -> {
+            if (writerDone[0]) {
+                return;
+            }
+
+            Thread writer = new Thread(() -> tree.insert("writer", 1));
+            writer.start();
+
+            try {
+                writer.join(10_000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            if (writer.isAlive()) {
+                throw new RuntimeException("forEach blocked a writer!");
+            }
+
+            writerDone[0] = true;
+        });
+
+        System.out.println("Unblocked iteration test passed");
+    }
+
+    private static void testTree(Map<String, Integer> weightMap, int weightSum, PersistentBalancedWeightTree.Snapshot tree) {
+        Map<String, Integer> entries = new HashMap<>();
+
+        tree.forEach(entries::put);
+
+        if (!entries.equals(weightMap)) {
+            throw new RuntimeException("Snapshot entries do not match!");
+        }
+
+        if (weightSum != tree.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            int r = RANDOM.nextInt(weightSum);
+
+            String selection = tree.select(r);
+
+            selectionCounts.put(selection, selectionCounts.getOrDefault(selection, 0) + 1);
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
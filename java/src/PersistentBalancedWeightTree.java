@@ -0,0 +1,451 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NonRecursiveBalancedWeightTree that publishes an immutable snapshot after every insert, update and remove.
+ * The writer keeps working on the usual mutable nodes and afterwards copies only the root to node path that the
+ * operation touched into new immutable versions, sharing every other subtree with the previous snapshot.
+ * This is enough because promote, demote and pull up only ever move along a single path.
+ * Readers take a snapshot and select against it without any synchronization.
+ */
+public class PersistentBalancedWeightTree implements WeightTree {
+
+    private static final class Version {
+
+        final String id;
+        final int weight;
+
+        final Version leftChild;
+        final Version rightChild;
+
+        final int weightSum;
+
+        private Version(Node node) {
+            id = node.id;
+            weight = node.weight;
+
+            leftChild = node.leftChild == null ? null : node.leftChild.version;
+            rightChild = node.rightChild == null ? null : node.rightChild.version;
+
+            weightSum = node.weightSum;
+        }
+
+    }
+
+    public static final class Snapshot {
+
+        private final Version root;
+
+        private Snapshot(Version root) {
+            this.root = root;
+        }
+
+        public int weightSum() {
+            return root == null ? 0 : root.weightSum;
+        }
+
+        public String select(int weight) {
+            if (root == null) {
+                return null;
+            }
+
+            Version probe = root;
+
+            while (true) {
+                if (probe.leftChild != null && probe.leftChild.weightSum > weight) {
+                    probe = probe.leftChild;
+                    continue;
+                }
+
+                weight -= probe.leftChild == null ? 0 : probe.leftChild.weightSum;
+
+                if (probe.weight > weight) {
+                    return probe.id;
+                }
+
+                weight -= probe.weight;
+
+                if (probe.rightChild != null && probe.rightChild.weightSum > weight) {
+                    probe = probe.rightChild;
+                }
+                else {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Walks the snapshot in pre-order. Versions have no parent pointers, so the subtrees still to walk are kept
+         * on a stack, which only grows to about the depth of the tree.
+         */
+        public void forEach(WeightConsumer consumer) {
+            if (root == null) {
+                return;
+            }
+
+            Version[] pending = new Version[32];
+            int count = 0;
+
+            pending[count++] = root;
+
+            while (count > 0) {
+                Version probe = pending[--count];
+
+                consumer.accept(probe.id, probe.weight);
+
+                if (count + 2 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+
+                if (probe.rightChild != null) {
+                    pending[count++] = probe.rightChild;
+                }
+
+                if (probe.leftChild != null) {
+                    pending[count++] = probe.leftChild;
+                }
+            }
+        }
+
+    }
+
+    private static class Node {
+
+        String id;
+        int weight;
+
+        Node parent;
+        Node leftChild;
+        Node rightChild;
+
+        boolean isLeftChild;
+
+        int weightSum;
+
+        Version version;
+
+        private Node(String id, int weight) {
+            this.id = id;
+            this.weight = weight;
+
+            weightSum = weight;
+        }
+
+    }
+
+    private Node root = null;
+
+    private Map<String, Node> nodeMap = new HashMap<>();
+
+    private final TreeStatistics statistics = new TreeStatistics();
+
+    private volatile Snapshot snapshot = new Snapshot(null);
+
+    /**
+     * Returns the snapshot published by the last insert, update or remove.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public int weightSum() {
+        return snapshot.weightSum();
+    }
+
+    public String select(int weight) {
+        return snapshot.select(weight);
+    }
+
+    /**
+     * Returns a copy of the statistics as of the last insert, update or remove.
+     */
+    public synchronized TreeStatistics statistics() {
+        return new TreeStatistics(statistics);
+    }
+
+    /**
+     * Walks the snapshot published by the last insert, update or remove, so writers are not held off however long
+     * the consumer takes, and the consumer sees the entries of a single point in time.
+     */
+    public void forEach(WeightConsumer consumer) {
+        snapshot.forEach(consumer);
+    }
+
+    public synchronized void insert(String id, int weight) {
+        Node node = new Node(id, weight);
+        nodeMap.put(id, node);
+
+        if (root == null) {
+            root = node;
+
+            statistics.inserted(0, weight);
+
+            publish(node);
+            return;
+        }
+
+        int depth = 1;
+
+        Node probe = root;
+
+        while (true) {
+            probe.weightSum += node.weightSum;
+
+            if (probe.leftChild == null) {
+                node.isLeftChild = true;
+                node.parent = probe;
+
+                probe.leftChild = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                publish(node);
+                return;
+            }
+            else if (probe.rightChild == null) {
+                node.isLeftChild = false;
+                node.parent = probe;
+
+                probe.rightChild = node;
+
+                statistics.inserted(depth, weight);
+
+                promote(node);
+                publish(node);
+                return;
+            }
+            else if (probe.leftChild.weightSum > probe.rightChild.weightSum) {
+                probe = probe.rightChild;
+            }
+            else {
+                probe = probe.leftChild;
+            }
+
+            depth++;
+        }
+    }
+
+    private void promote(Node node) {
+        Node probe = node;
+
+        while (probe.parent != null && probe.weight > probe.parent.weight) {
+            statistics.promoteSwapped(probe.weight, probe.parent.weight);
+
+            String id = probe.id;
+            probe.id = probe.parent.id;
+            probe.parent.id = id;
+
+            int weight = probe.weight;
+            probe.weight = probe.parent.weight;
+            probe.parent.weight = weight;
+
+            probe.weightSum += probe.weight - weight;
+
+            nodeMap.put(probe.id, probe);
+            nodeMap.put(probe.parent.id, probe.parent);
+
+            probe = probe.parent;
+        }
+    }
+
+    public synchronized boolean remove(String id) {
+        Node node = nodeMap.remove(id);
+
+        if (node == null) {
+            return false;
+        }
+
+        int depth = 0;
+
+        Node probe = node;
+
+        while (probe.parent != null) {
+            probe.parent.weightSum -= node.weight;
+
+            probe = probe.parent;
+
+            depth++;
+        }
+
+        statistics.removed(depth, node.weight);
+
+        publish(pullUp(node, depth));
+
+        return true;
+    }
+
+    /**
+     * Returns the parent of the leaf that was cut off, which is the deepest node that changed.
+     */
+    private Node pullUp(Node node, int depth) {
+        Node probe = node;
+
+        while (true) {
+            if (probe.leftChild == null) {
+                if (probe.rightChild == null) {
+                    if (probe.parent == null) {
+                        root = null;
+                    }
+                    else if (probe.isLeftChild) {
+                        probe.parent.leftChild = null;
+                    }
+                    else {
+                        probe.parent.rightChild = null;
+                    }
+
+                    statistics.cut(depth);
+
+                    return probe.parent;
+                }
+                else {
+                    probe.id = probe.rightChild.id;
+                    nodeMap.put(probe.id, probe);
+
+                    probe.weight = probe.rightChild.weight;
+                    probe.weightSum = probe.rightChild.weightSum;
+
+                    statistics.pulledUp(probe.weight);
+
+                    probe = probe.rightChild;
+                }
+            }
+            else if (probe.rightChild == null) {
+                probe.id = probe.leftChild.id;
+                nodeMap.put(probe.id, probe);
+
+                probe.weight = probe.leftChild.weight;
+                probe.weightSum = probe.leftChild.weightSum;
+
+                statistics.pulledUp(probe.weight);
+
+                probe = probe.leftChild;
+            }
+            else if (probe.leftChild.weight > probe.rightChild.weight) {
+                probe.id = probe.leftChild.id;
+                nodeMap.put(probe.id, probe);
+
+                probe.weight = probe.leftChild.weight;
+                probe.weightSum = probe.leftChild.weightSum + probe.rightChild.weightSum;
+
+                statistics.pulledUp(probe.weight);
+
+                probe = probe.leftChild;
+            }
+            else {
+                probe.id = probe.rightChild.id;
+                nodeMap.put(probe.id, probe);
+
+                probe.weight = probe.rightChild.weight;
+                probe.weightSum = probe.leftChild.weightSum + probe.rightChild.weightSum;
+
+                statistics.pulledUp(probe.weight);
+
+                probe = probe.rightChild;
+            }
+
+            depth++;
+        }
+    }
+
+    public synchronized boolean update(String id, int weight) {
+        Node node = nodeMap.get(id);
+
+        if (node == null) {
+            return false;
+        }
+
+        int weightDiff = weight - node.weight;
+
+        node.weight = weight;
+        node.weightSum += weightDiff;
+
+        int depth = 0;
+
+        Node probe = node;
+
+        while (probe.parent != null) {
+            probe.parent.weightSum += weightDiff;
+
+            probe = probe.parent;
+
+            depth++;
+        }
+
+        statistics.updated(depth, weightDiff);
+
+        if (weightDiff > 0) {
+            promote(node);
+            publish(node);
+        }
+        else {
+            publish(demote(node));
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the node where the demoted entry came to rest, which is the deepest node that changed.
+     */
+    private Node demote(Node node) {
+        Node probe = node;
+
+        while (true) {
+            Node child;
+
+            if (probe.leftChild != null) {
+                if (probe.rightChild != null && probe.rightChild.weight >= probe.leftChild.weight) {
+                    child = probe.rightChild;
+                }
+                else {
+                    child = probe.leftChild;
+                }
+            }
+            else if (probe.rightChild != null) {
+                child = probe.rightChild;
+            }
+            else {
+                return probe;
+            }
+
+            if (child.weight <= probe.weight) {
+                return probe;
+            }
+
+            statistics.demoteSwapped(child.weight, probe.weight);
+
+            String id = probe.id;
+            probe.id = child.id;
+            child.id = id;
+
+            int weight = probe.weight;
+            probe.weight = child.weight;
+            child.weight = weight;
+
+            child.weightSum += weight - probe.weight;
+
+            nodeMap.put(probe.id, probe);
+            nodeMap.put(child.id, child);
+
+            probe = child;
+        }
+    }
+
+    /**
+     * Copies the path from the node up to the root into new versions and publishes the new root.
+     */
+    private void publish(Node node) {
+        Node probe = node;
+
+        while (probe != null) {
+            probe.version = new Version(probe);
+
+            probe = probe.parent;
+        }
+
+        snapshot = new Snapshot(root == null ? null : root.version);
+    }
+
+}
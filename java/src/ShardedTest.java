@@ -0,0 +1,257 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ShardedTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final int SHARD_COUNT = 8;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) throws InterruptedException {
+        randomTest();
+        retryTest();
+        concurrentTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        ShardedWeightedList list = new ShardedWeightedList(SHARD_COUNT);
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || ids.isEmpty()) {
+                String id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (weightMap.containsKey(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                list.insert(id, weight);
+            }
+            else if (rand == 1) {
+                String id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightMap.put(id, weight);
+                list.update(id, weight);
+            } else {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightMap.remove(id);
+
+                if (!list.remove(id) || list.remove(id) || list.update(id, 1)) {
+                    throw new RuntimeException("Removed id is still in the list!");
+                }
+            }
+        }
+
+        System.out.println(weightMap.size() + " entries with weight sum " + list.weightSum());
+
+        testList(weightMap, list);
+    }
+
+    /**
+     * The first select of every shard reports nothing, as a shard that shrank after its sum was read would.
+     * Select has to start over with fresh shard sums and still find the right id.
+     */
+    private static void retryTest() {
+        int[] misses = { 0 };
+
+        ShardedWeightedList list = new ShardedWeightedList(SHARD_COUNT, () -> new WeightTree() {
+
+            private final NonRecursiveBalancedWeightTree tree = new NonRecursiveBalancedWeightTree();
+
+            private boolean missed = false;
+
+            public int weightSum() { return tree.weightSum(); }
+            public void insert(String id, int weight) { tree.insert(id, weight); }
+            public boolean update(String id, int weight) { return tree.update(id, weight); }
+            public boolean remove(String id) { return tree.remove(id); }
+            public void forEach(WeightConsumer consumer) { tree.forEach(consumer); }
+
+            public String select(int weight) {
+                if (!missed) {
+                    missed = true;
+                    misses[0]++;
+
+                    return null;
+                }
+
+                return tree.select(weight);
+            }
+
+        });
+
+        Map<String, Integer> weightMap = new HashMap<>();
+
+        for (int i = 0; i < 200; i++) {
+            weightMap.put("R" + i, i % 7 + 1);
+            list.insert("R" + i, i % 7 + 1);
+        }
+
+        testList(weightMap, list);
+
+        if (misses[0] == 0) {
+            throw new RuntimeException("Select was never retried!");
+        }
+
+        System.out.println("Retry test passed after " + misses[0] + " retries");
+    }
+
+    /**
+     * A base set of entries stays in the list the whole time while writers churn other entries, so every weight
+     * under the base weight sum must select an id however the shard sums change under the readers.
+     */
+    private static void concurrentTest() throws InterruptedException {
+        ShardedWeightedList list = new ShardedWeightedList(SHARD_COUNT);
+
+        Map<String, Integer> weightMap = new HashMap<>();
+
+        int baseWeightSum = 0;
+
+        for (int i = 0; i < 100; i++) {
+            weightMap.put("B" + i, 10);
+            list.insert("B" + i, 10);
+
+            baseWeightSum += 10;
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> writers = new ArrayList<>();
+
+        for (int w = 0; w < 2; w++) {
+            String prefix = "W" + w + "-";
+            Random random = new Random(RANDOM.nextLong());
+
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    String id = prefix + random.nextInt(50);
+
+                    // Entries come and go and change their weight by large steps, so shards shrink often.
+                    if (!list.remove(id)) {
+                        list.insert(id, random.nextInt(1000) + 1);
+                    }
+                }
+
+                for (int i = 0; i < 50; i++) {
+                    list.remove(prefix + i);
+                }
+            }));
+        }
+
+        List<Thread> readers = new ArrayList<>();
+
+        int finalBaseWeightSum = baseWeightSum;
+
+        for (int r = 0; r < 4; r++) {
+            Random random = new Random(RANDOM.nextLong());
+
+            readers.add(new Thread(() -> {
+                while (writers.stream().anyMatch(Thread::isAlive)) {
+                    int weight = random.nextInt(finalBaseWeightSum);
+
+                    if (list.select(weight) == null) {
+                        throw new RuntimeException("Nothing selected under the base weight sum for " + weight);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread: writers) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+
+        for (Thread thread: readers) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+
+        for (Thread thread: writers) {
+            thread.join();
+        }
+
+        for (Thread thread: readers) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException("Concurrent test failed", failure.get());
+        }
+
+        testList(weightMap, list);
+
+        System.out.println("Concurrent test passed");
+    }
+
+    /**
+     * Every weight from 0 to the weight sum is selected once, so every id must come up exactly as often as its
+     * weight, which checks the offsets across shard boundaries.
+     */
+    private static void testList(Map<String, Integer> weightMap, ShardedWeightedList list) {
+        int weightSum = 0;
+
+        for (int weight: weightMap.values()) {
+            weightSum += weight;
+        }
+
+        if (weightSum != list.weightSum()) {
+            throw new RuntimeException("Weight sum do not match!");
+        }
+
+        if (list.select(weightSum) != null) {
+            throw new RuntimeException("Weight sum selected an id!");
+        }
+
+        Map<String, Integer> rangeCounts = new HashMap<>();
+
+        for (int w = 0; w < weightSum; w++) {
+            rangeCounts.merge(list.select(w), 1, Integer::sum);
+        }
+
+        if (!rangeCounts.equals(weightMap)) {
+            throw new RuntimeException("Weight ranges do not match!");
+        }
+
+        Map<String, Integer> entries = new HashMap<>();
+
+        list.forEach(entries::put);
+
+        if (!entries.equals(weightMap)) {
+            throw new RuntimeException("Entries do not match!");
+        }
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(list.select(RANDOM.nextInt(weightSum)), 1, Integer::sum);
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Weighted list spread over independent trees so that writers on different shards do not contend.
+ * Every id is hashed to one shard, and every shard is guarded by its own lock. After each mutation the shard's
+ * weight sum is published to a small array of atomic shard sums, padded so that shards do not share cache lines.
+ * Select walks the shard sums to find the shard whose range holds the weight and then selects inside that shard.
+ * <p>
+ * The shard sums are read without locking, so a select racing writers works on shard ranges that may already be
+ * outdated. Within a shard the result is always consistent, and when a shard shrank under the weight in between,
+ * select starts over with the new sums.
+ */
+public class ShardedWeightedList implements WeightTree {
+
+    // 16 ints are 64 bytes, the size of a cache line on common hardware.
+    private static final int STRIDE = 16;
+
+    private final WeightTree[] shards;
+
+    private final AtomicIntegerArray shardSums;
+
+    public ShardedWeightedList(int shardCount) {
+        this(shardCount, NonRecursiveBalancedWeightTree::new);
+    }
+
+    /**
+     * The factory is called once per shard and must return a new empty tree every time.
+     * The trees are only ever used under the lock of their shard.
+     */
+    public ShardedWeightedList(int shardCount, Supplier<? extends WeightTree> factory) {
+        shards = new WeightTree[shardCount];
+
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = factory.get();
+        }
+
+        shardSums = new AtomicIntegerArray(shardCount * STRIDE);
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Walks the shards one after the other, each under its own lock, so the entries of a shard are consistent
+     * with each other but not with the entries of other shards.
+     */
+    public void forEach(WeightConsumer consumer) {
+        for (WeightTree shard: shards) {
+            synchronized (shard) {
+                shard.forEach(consumer);
+            }
+        }
+    }
+
+    public int weightSum() {
+        int weightSum = 0;
+
+        for (int i = 0; i < shards.length; i++) {
+            weightSum += shardSums.get(i * STRIDE);
+        }
+
+        return weightSum;
+    }
+
+    public String select(int weight) {
+        retry:
+        while (true) {
+            int remainingWeight = weight;
+
+            for (int i = 0; i < shards.length; i++) {
+                int shardSum = shardSums.get(i * STRIDE);
+
+                if (remainingWeight < shardSum) {
+                    String id;
+
+                    synchronized (shards[i]) {
+                        id = shards[i].select(remainingWeight);
+                    }
+
+                    if (id == null) {
+                        continue retry;
+                    }
+
+                    return id;
+                }
+
+                remainingWeight -= shardSum;
+            }
+
+            return null;
+        }
+    }
+
+    public void insert(String id, int weight) {
+        int shard = shardOf(id);
+
+        synchronized (shards[shard]) {
+            shards[shard].insert(id, weight);
+
+            shardSums.set(shard * STRIDE, shards[shard].weightSum());
+        }
+    }
+
+    public boolean update(String id, int weight) {
+        int shard = shardOf(id);
+
+        synchronized (shards[shard]) {
+            if (!shards[shard].update(id, weight)) {
+                return false;
+            }
+
+            shardSums.set(shard * STRIDE, shards[shard].weightSum());
+        }
+
+        return true;
+    }
+
+    public boolean remove(String id) {
+        int shard = shardOf(id);
+
+        synchronized (shards[shard]) {
+            if (!shards[shard].remove(id)) {
+                return false;
+            }
+
+            shardSums.set(shard * STRIDE, shards[shard].weightSum());
+        }
+
+        return true;
+    }
+
+    private int shardOf(String id) {
+        int hash = id.hashCode() * 0x9E3779B9;
+
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+}
@@ -5,7 +5,7 @@ import java.util.Map;
  * BalancedWeightTree but unnecessary variables have been removed.
  * This helps to have smaller contract size and lesser gas spent on the functions.
  */
-public class SimplifiedBalancedWeightTree {
+public class SimplifiedBalancedWeightTree implements WeightTree {
 
     private static class Node {
 
@@ -33,10 +33,42 @@ public class SimplifiedBalancedWeightTree {
 
     private Map<String, Node> nodeMap = new HashMap<>();
 
+    private final TreeStatistics statistics = new TreeStatistics();
+
     public int weightSum() {
         return root == null ? 0 : root.weightSum;
     }
 
+    public TreeStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Walks the tree in pre-order along the parent pointers, so neither a stack nor an iterator is allocated.
+     */
+    public void forEach(WeightConsumer consumer) {
+        Node probe = root;
+
+        while (probe != null) {
+            consumer.accept(probe.id, probe.weight);
+
+            if (probe.leftChild != null) {
+                probe = probe.leftChild;
+            }
+            else if (probe.rightChild != null) {
+                probe = probe.rightChild;
+            }
+            else {
+                // Climb until the probe is a left child with a right sibling, which is the next subtree to walk.
+                while (probe.parent != null && (!probe.isLeftChild || probe.parent.rightChild == null)) {
+                    probe = probe.parent;
+                }
+
+                probe = probe.parent == null ? null : probe.parent.rightChild;
+            }
+        }
+    }
+
     public String select(int weight) {
         if (root == null) {
             return null;
@@ -73,9 +105,13 @@ public class SimplifiedBalancedWeightTree {
 
         if (root == null) {
             root = node;
+
+            statistics.inserted(0, weight);
             return;
         }
 
+        int depth = 1;
+
         Node probe = root;
 
         while (true) {
@@ -87,6 +123,8 @@ public class SimplifiedBalancedWeightTree {
 
                 probe.leftChild = node;
 
+                statistics.inserted(depth, weight);
+
                 promote(node);
                 return;
             }
@@ -96,6 +134,8 @@ public class SimplifiedBalancedWeightTree {
 
                 probe.rightChild = node;
 
+                statistics.inserted(depth, weight);
+
                 promote(node);
                 return;
             }
@@ -105,11 +145,15 @@ public class SimplifiedBalancedWeightTree {
             else {
                 probe = probe.leftChild;
             }
+
+            depth++;
         }
     }
 
     private void promote(Node node) {
         if (node.parent != null && node.weight > node.parent.weight) {
+            statistics.promoteSwapped(node.weight, node.parent.weight);
+
             String id = node.id;
             node.id = node.parent.id;
             node.parent.id = id;
@@ -134,20 +178,26 @@ public class SimplifiedBalancedWeightTree {
             return false;
         }
 
+        int depth = 0;
+
         Node probe = node;
 
         while (probe.parent != null) {
             probe.parent.weightSum -= node.weight;
 
             probe = probe.parent;
+
+            depth++;
         }
 
-        remove(node);
+        statistics.removed(depth, node.weight);
+
+        remove(node, depth);
 
         return true;
     }
 
-    private void remove(Node node) {
+    private void remove(Node node, int depth) {
         if (node.leftChild == null) {
             if (node.rightChild == null) {
                 if (node.parent == null) {
@@ -159,6 +209,8 @@ public class SimplifiedBalancedWeightTree {
                 else {
                     node.parent.rightChild = null;
                 }
+
+                statistics.cut(depth);
             }
             else {
                 node.id = node.rightChild.id;
@@ -167,7 +219,9 @@ public class SimplifiedBalancedWeightTree {
                 node.weight = node.rightChild.weight;
                 node.weightSum = node.rightChild.weightSum;
 
-                remove(node.rightChild);
+                statistics.pulledUp(node.weight);
+
+                remove(node.rightChild, depth + 1);
             }
         }
         else if (node.rightChild == null) {
@@ -177,7 +231,9 @@ public class SimplifiedBalancedWeightTree {
             node.weight = node.leftChild.weight;
             node.weightSum = node.leftChild.weightSum;
 
-            remove(node.leftChild);
+            statistics.pulledUp(node.weight);
+
+            remove(node.leftChild, depth + 1);
         }
         else if (node.leftChild.weight > node.rightChild.weight) {
             node.id = node.leftChild.id;
@@ -186,7 +242,9 @@ public class SimplifiedBalancedWeightTree {
             node.weight = node.leftChild.weight;
             node.weightSum = node.leftChild.weightSum + node.rightChild.weightSum;
 
-            remove(node.leftChild);
+            statistics.pulledUp(node.weight);
+
+            remove(node.leftChild, depth + 1);
         }
         else {
             node.id = node.rightChild.id;
@@ -195,7 +253,9 @@ public class SimplifiedBalancedWeightTree {
             node.weight = node.rightChild.weight;
             node.weightSum = node.leftChild.weightSum + node.rightChild.weightSum;
 
-            remove(node.rightChild);
+            statistics.pulledUp(node.weight);
+
+            remove(node.rightChild, depth + 1);
         }
     }
 
@@ -211,14 +271,20 @@ public class SimplifiedBalancedWeightTree {
         node.weight = weight;
         node.weightSum += weightDiff;
 
+        int depth = 0;
+
         Node probe = node;
 
         while (probe.parent != null) {
             probe.parent.weightSum += weightDiff;
 
             probe = probe.parent;
+
+            depth++;
         }
 
+        statistics.updated(depth, weightDiff);
+
         if (weightDiff > 0) {
             promote(node);
         }
@@ -234,6 +300,8 @@ public class SimplifiedBalancedWeightTree {
             if (node.rightChild != null) {
                 if (node.leftChild.weight > node.rightChild.weight) {
                     if (node.leftChild.weight > node.weight) {
+                        statistics.demoteSwapped(node.leftChild.weight, node.weight);
+
                         String id = node.id;
                         node.id = node.leftChild.id;
                         node.leftChild.id = id;
@@ -251,6 +319,8 @@ public class SimplifiedBalancedWeightTree {
                     }
                 }
                 else if (node.rightChild.weight > node.weight) {
+                    statistics.demoteSwapped(node.rightChild.weight, node.weight);
+
                     String id = node.id;
                     node.id = node.rightChild.id;
                     node.rightChild.id = id;
@@ -268,6 +338,8 @@ public class SimplifiedBalancedWeightTree {
                 }
             }
             else if (node.leftChild.weight > node.weight) {
+                statistics.demoteSwapped(node.leftChild.weight, node.weight);
+
                 String id = node.id;
                 node.id = node.leftChild.id;
                 node.leftChild.id = id;
@@ -285,6 +357,8 @@ public class SimplifiedBalancedWeightTree {
             }
         }
         else if (node.rightChild != null && node.rightChild.weight > node.weight) {
+            statistics.demoteSwapped(node.rightChild.weight, node.weight);
+
             String id = node.id;
             node.id = node.rightChild.id;
             node.rightChild.id = id;
@@ -0,0 +1,294 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Shape of a weight tree as it matters for select, kept up to date by the tree on every insert, update and remove
+ * instead of being measured by walking the nodes.
+ * Depths count from 0 at the root, so select visits depth + 1 nodes to reach an entry.
+ */
+public class TreeStatistics {
+
+    private int[] depthCounts = new int[8];
+
+    private int size = 0;
+    private long weightSum = 0;
+
+    private long weightedProbeLengthSum = 0;
+
+    private long promoteCount = 0;
+    private long promoteSwaps = 0;
+
+    private long demoteCount = 0;
+    private long demoteSwaps = 0;
+
+    private long removeCount = 0;
+    private long removeSwaps = 0;
+
+    public TreeStatistics() {
+
+    }
+
+    public TreeStatistics(TreeStatistics statistics) {
+        depthCounts = statistics.depthCounts.clone();
+
+        size = statistics.size;
+        weightSum = statistics.weightSum;
+
+        weightedProbeLengthSum = statistics.weightedProbeLengthSum;
+
+        promoteCount = statistics.promoteCount;
+        promoteSwaps = statistics.promoteSwaps;
+
+        demoteCount = statistics.demoteCount;
+        demoteSwaps = statistics.demoteSwaps;
+
+        removeCount = statistics.removeCount;
+        removeSwaps = statistics.removeSwaps;
+    }
+
+    /**
+     * Returns the number of bytes writeTo needs.
+     */
+    int byteCount() {
+        return Integer.BYTES * 2 + Long.BYTES * 8 + depthCounts.length * Integer.BYTES;
+    }
+
+    /**
+     * Writes the statistics in the byte order of the buffer so they can be read back with readFrom.
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(size);
+        buffer.putLong(weightSum);
+
+        buffer.putLong(weightedProbeLengthSum);
+
+        buffer.putLong(promoteCount);
+        buffer.putLong(promoteSwaps);
+
+        buffer.putLong(demoteCount);
+        buffer.putLong(demoteSwaps);
+
+        buffer.putLong(removeCount);
+        buffer.putLong(removeSwaps);
+
+        buffer.putInt(depthCounts.length);
+
+        for (int depthCount: depthCounts) {
+            buffer.putInt(depthCount);
+        }
+    }
+
+    static TreeStatistics readFrom(ByteBuffer buffer) {
+        TreeStatistics statistics = new TreeStatistics();
+
+        statistics.size = buffer.getInt();
+        statistics.weightSum = buffer.getLong();
+
+        statistics.weightedProbeLengthSum = buffer.getLong();
+
+        statistics.promoteCount = buffer.getLong();
+        statistics.promoteSwaps = buffer.getLong();
+
+        statistics.demoteCount = buffer.getLong();
+        statistics.demoteSwaps = buffer.getLong();
+
+        statistics.removeCount = buffer.getLong();
+        statistics.removeSwaps = buffer.getLong();
+
+        statistics.depthCounts = new int[buffer.getInt()];
+
+        for (int i = 0; i < statistics.depthCounts.length; i++) {
+            statistics.depthCounts[i] = buffer.getInt();
+        }
+
+        return statistics;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long weightSum() {
+        return weightSum;
+    }
+
+    /**
+     * Returns the number of nodes select visits on average for a uniformly drawn weight, which is the depth of
+     * every entry plus one weighted by the entry's weight.
+     */
+    public double expectedProbeLength() {
+        return weightSum == 0 ? 0 : (double) weightedProbeLengthSum / weightSum;
+    }
+
+    /**
+     * Returns the depth of the deepest node, or -1 if the tree is empty.
+     */
+    public int maxDepth() {
+        int depth = depthCounts.length - 1;
+
+        while (depth >= 0 && depthCounts[depth] == 0) {
+            depth--;
+        }
+
+        return depth;
+    }
+
+    /**
+     * Returns the number of nodes at every depth from the root to the deepest node.
+     */
+    public int[] depthHistogram() {
+        return Arrays.copyOf(depthCounts, maxDepth() + 1);
+    }
+
+    /**
+     * Returns the number of promotes, one for every insert and every update that increased a weight.
+     */
+    public long promoteCount() {
+        return promoteCount;
+    }
+
+    public long promoteSwaps() {
+        return promoteSwaps;
+    }
+
+    /**
+     * Returns the number of demotes, one for every update that did not increase a weight.
+     */
+    public long demoteCount() {
+        return demoteCount;
+    }
+
+    public long demoteSwaps() {
+        return demoteSwaps;
+    }
+
+    public long removeCount() {
+        return removeCount;
+    }
+
+    /**
+     * Returns the number of entries moved one level up by pull up during remove.
+     */
+    public long removeSwaps() {
+        return removeSwaps;
+    }
+
+    @Override
+    public String toString() {
+        return "size " + size + ", expected probe length " + expectedProbeLength() + ", max depth " + maxDepth() +
+                ", promote " + promoteSwaps + "/" + promoteCount + ", demote " + demoteSwaps + "/" + demoteCount +
+                ", remove " + removeSwaps + "/" + removeCount;
+    }
+
+    /**
+     * A new node with the weight was placed at the depth without a promote, like in a bulk build.
+     */
+    void placed(int depth, long weight) {
+        if (depth == depthCounts.length) {
+            depthCounts = Arrays.copyOf(depthCounts, depthCounts.length * 2);
+        }
+
+        depthCounts[depth]++;
+
+        size++;
+        weightSum += weight;
+
+        weightedProbeLengthSum += weight * (depth + 1);
+    }
+
+    /**
+     * Nodes were placed in bulk without a promote, with the given number of nodes at every depth.
+     * The weighted probe length sum is the sum of the weight sums of all the nodes.
+     */
+    void placed(int[] depthCounts, long weightSum, long weightedProbeLengthSum) {
+        while (depthCounts.length > this.depthCounts.length) {
+            this.depthCounts = Arrays.copyOf(this.depthCounts, this.depthCounts.length * 2);
+        }
+
+        for (int depth = 0; depth < depthCounts.length; depth++) {
+            this.depthCounts[depth] += depthCounts[depth];
+
+            size += depthCounts[depth];
+        }
+
+        this.weightSum += weightSum;
+
+        this.weightedProbeLengthSum += weightedProbeLengthSum;
+    }
+
+    /**
+     * Every weight changed at once without moving any node, like when they are all scaled.
+     * The weighted probe length sum is the sum of the weight sums of all the nodes.
+     */
+    void reweighed(long weightSum, long weightedProbeLengthSum) {
+        this.weightSum = weightSum;
+
+        this.weightedProbeLengthSum = weightedProbeLengthSum;
+    }
+
+    /**
+     * A new node with the weight was added as a leaf at the depth and is about to be promoted.
+     */
+    void inserted(int depth, long weight) {
+        placed(depth, weight);
+
+        promoteCount++;
+    }
+
+    /**
+     * The weight of the entry at the depth changed and it is about to be promoted or demoted.
+     */
+    void updated(int depth, long weightDiff) {
+        weightSum += weightDiff;
+
+        weightedProbeLengthSum += weightDiff * (depth + 1);
+
+        if (weightDiff > 0) {
+            promoteCount++;
+        }
+        else {
+            demoteCount++;
+        }
+    }
+
+    void promoteSwapped(long heavierWeight, long lighterWeight) {
+        promoteSwaps++;
+
+        weightedProbeLengthSum += lighterWeight - heavierWeight;
+    }
+
+    void demoteSwapped(long heavierWeight, long lighterWeight) {
+        demoteSwaps++;
+
+        weightedProbeLengthSum += lighterWeight - heavierWeight;
+    }
+
+    /**
+     * The entry at the depth was removed and its node is about to be pulled up.
+     */
+    void removed(int depth, long weight) {
+        removeCount++;
+
+        size--;
+        weightSum -= weight;
+
+        weightedProbeLengthSum -= weight * (depth + 1);
+    }
+
+    /**
+     * An entry with the weight moved one level up during a pull up.
+     */
+    void pulledUp(long weight) {
+        removeSwaps++;
+
+        weightedProbeLengthSum -= weight;
+    }
+
+    /**
+     * The leaf at the depth was cut off at the end of a pull up.
+     */
+    void cut(int depth) {
+        depthCounts[depth]--;
+    }
+
+}
@@ -0,0 +1,9 @@
+/**
+ * Receives the entries of a weight tree one by one, without an entry object or a boxed weight per entry.
+ */
+@FunctionalInterface
+public interface WeightConsumer {
+
+    void accept(String id, int weight);
+
+}
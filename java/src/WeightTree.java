@@ -0,0 +1,31 @@
+/**
+ * The operations every weighted list with string ids and int weights has in common, so containers like
+ * ShardedWeightedList can be built on top of any of them.
+ * Select returns the id whose weight range contains the weight, counting the ranges from 0 in the order of the
+ * list, or null if the weight is equal or greater than the weight sum.
+ */
+public interface WeightTree {
+
+    int weightSum();
+
+    String select(int weight);
+
+    void insert(String id, int weight);
+
+    boolean update(String id, int weight);
+
+    boolean remove(String id);
+
+    /**
+     * Passes every entry to the consumer, in no particular order. The consumer must not change the tree.
+     */
+    void forEach(WeightConsumer consumer);
+
+    /**
+     * Returns an immutable copy of the entries laid out for fast select, see FrozenWeightTree.
+     */
+    default FrozenWeightTree freeze() {
+        return FrozenWeightTree.of(this);
+    }
+
+}
@@ -0,0 +1,210 @@
+import java.util.*;
+
+public class WideTest {
+
+    private static final int SELECTION_TRY_COUNT = 1_000_000;
+
+    private static final Random RANDOM = new Random();
+
+    public static void main(String... args) {
+        randomTest();
+        boundaryTest();
+        growTest();
+    }
+
+    private static void randomTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>(200);
+        WideWeightedList list = new WideWeightedList();
+
+        int weightSum = 0;
+
+        for (int i = 0; i < 800; i++) {
+            int rand = RANDOM.nextInt(4);
+            if (rand > 1 || ids.isEmpty()) {
+                String id = UUID.randomUUID().toString().substring(0, 4);
+
+                if (weightMap.containsKey(id)) {
+                    continue;
+                }
+
+                int weight = RANDOM.nextInt(100) + 1;
+                weightSum += weight;
+
+                weightMap.put(id, weight);
+                ids.add(id);
+                list.insert(id, weight);
+            }
+            else if (rand == 1) {
+                String id = ids.get(RANDOM.nextInt(ids.size()));
+                int weight = RANDOM.nextInt(100) + 1;
+
+                weightSum += weight - weightMap.get(id);
+
+                weightMap.put(id, weight);
+                list.update(id, weight);
+            } else {
+                String id = ids.remove(RANDOM.nextInt(ids.size()));
+                weightSum -= weightMap.remove(id);
+
+                if (!list.remove(id) || list.remove(id) || list.update(id, 1)) {
+                    throw new RuntimeException("Removed id is still in the list!");
+                }
+            }
+        }
+
+        System.out.println(weightMap.size() + " entries with weight sum " + weightSum);
+
+        if (weightMap.size() != list.size()) {
+            throw new RuntimeException("Size does not match!");
+        }
+
+        testList(weightMap, weightSum, list);
+    }
+
+    /**
+     * With unit weights every weight selects the entry at that index, so the weights at the edges of blocks and of
+     * the blocks above them must land exactly. Removing the first entry moves the last one into its index.
+     */
+    private static void boundaryTest() {
+        WideWeightedList list = new WideWeightedList();
+
+        int count = 16 * 16 * 16 + 16 + 1;
+
+        for (int i = 0; i < count; i++) {
+            list.insert("B" + i, 1);
+        }
+
+        for (int edge: new int[] { 16, 256, 4096 }) {
+            for (int w = edge; w < count; w += edge) {
+                for (int weight: new int[] { w - 1, w, w + 1 }) {
+                    if (weight < count && !("B" + weight).equals(list.select(weight))) {
+                        throw new RuntimeException("Selection at " + weight + " does not match!");
+                    }
+                }
+            }
+        }
+
+        if (list.select(count) != null || list.select(-1) != null) {
+            throw new RuntimeException("Selection outside the weight sum does not match!");
+        }
+
+        list.remove("B0");
+
+        if (!("B" + (count - 1)).equals(list.select(0)) || list.select(count - 1) != null) {
+            throw new RuntimeException("Last entry was not moved into the removed index!");
+        }
+
+        // Removing the last entry itself moves nothing.
+        list.remove("B" + (count - 2));
+
+        if (!("B" + (count - 3)).equals(list.select(count - 3)) || list.size() != count - 2) {
+            throw new RuntimeException("Removing the last entry moved an entry!");
+        }
+
+        System.out.println("Boundary test passed");
+    }
+
+    /**
+     * Grows the list entry by entry past the sizes where a level is added and shrinks it back down by removing
+     * from the front, the back and the middle, checking it right at every block size on the way.
+     */
+    private static void growTest() {
+        Map<String, Integer> weightMap = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        WideWeightedList list = new WideWeightedList();
+
+        Set<Integer> checkedSizes = Set.of(1, 15, 16, 17, 255, 256, 257, 4095, 4096, 4097, 5000);
+
+        int weightSum = 0;
+
+        for (int i = 0; i < 5000; i++) {
+            int weight = RANDOM.nextInt(100) + 1;
+            weightSum += weight;
+
+            weightMap.put("G" + i, weight);
+            ids.add("G" + i);
+            list.insert("G" + i, weight);
+
+            if (checkedSizes.contains(list.size())) {
+                testRanges(weightMap, weightSum, list);
+            }
+        }
+
+        while (!ids.isEmpty()) {
+            int choice = RANDOM.nextInt(3);
+            int position = choice == 0 ? 0 : choice == 1 ? ids.size() - 1 : RANDOM.nextInt(ids.size());
+
+            String id = ids.remove(position);
+            weightSum -= weightMap.remove(id);
+            list.remove(id);
+
+            if (checkedSizes.contains(list.size()) || list.size() < 20) {
+                testRanges(weightMap, weightSum, list);
+            }
+        }
+
+        if (list.weightSum() != 0 || list.select(0) != null) {
+            throw new RuntimeException("Emptied list is not empty!");
+        }
+
+        System.out.println("Grow test passed");
+    }
+
+    /**
+     * Selects every weight from 0 to the weight sum once, so every id must come up exactly as often as its weight.
+     */
+    private static void testRanges(Map<String, Integer> weightMap, int weightSum, WideWeightedList list) {
+        if (weightSum != list.weightSum() || weightMap.size() != list.size()) {
+            throw new RuntimeException("Weight sum or size do not match!");
+        }
+
+        Map<String, Integer> rangeCounts = new HashMap<>();
+
+        for (int w = 0; w < weightSum; w++) {
+            rangeCounts.merge(list.select(w), 1, Integer::sum);
+        }
+
+        if (!rangeCounts.equals(weightMap) || list.select(weightSum) != null) {
+            throw new RuntimeException("Weight ranges do not match at size " + list.size() + "!");
+        }
+
+        Map<String, Integer> entries = new HashMap<>();
+
+        list.forEach(entries::put);
+
+        if (!entries.equals(weightMap)) {
+            throw new RuntimeException("Entries do not match!");
+        }
+    }
+
+    private static void testList(Map<String, Integer> weightMap, int weightSum, WideWeightedList list) {
+        testRanges(weightMap, weightSum, list);
+
+        Map<String, Integer> selectionCounts = new HashMap<>();
+
+        for (int i = 0; i < SELECTION_TRY_COUNT; i++) {
+            selectionCounts.merge(list.select(RANDOM.nextInt(weightSum)), 1, Integer::sum);
+        }
+
+        float deviationSum = 0;
+
+        for (String id: weightMap.keySet()) {
+            float expected = weightMap.get(id).floatValue() / weightSum;
+            float actual = selectionCounts.getOrDefault(id, 0).floatValue() / SELECTION_TRY_COUNT;
+
+            float error = Math.abs(expected - actual) / expected;
+
+            deviationSum += error;
+        }
+
+        double error = 100 * deviationSum / weightMap.size();
+
+        if (error > 2) {
+            throw new RuntimeException("Error is too much!");
+        }
+
+        System.out.println("Random selection test passed with error " + error + "%");
+    }
+
+}
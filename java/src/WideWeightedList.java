@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weighted list with the contract of NonRecursiveBalancedWeightTree kept in a 16-ary tree of weight sums, so select
+ * walks about log16(n) levels instead of log2(n), six levels for ten million entries.
+ * The weights are the bottom level, packed at the indexes 0 to size - 1, and every level above holds the sums of
+ * consecutive blocks of 16 cells of the level below. The 16 sums of a block are contiguous, so a step of select
+ * reads one block, usually a single cache line, and picks the child with a branch-free count of the running sums
+ * that do not exceed the weight.
+ * Remove moves the last entry into the freed index to keep the entries packed. Unlike in the binary trees heavy
+ * entries are not kept near the top, every select walks all levels.
+ */
+public class WideWeightedList implements WeightTree {
+
+    private static final int SHIFT = 4;
+    private static final int FANOUT = 1 << SHIFT;
+
+    private static final int INITIAL_CAPACITY = FANOUT;
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+
+    // levels[0] holds the weights and the last level is a single block under the weight sum.
+    private int[][] levels = { new int[INITIAL_CAPACITY] };
+
+    private int size = 0;
+
+    private int weightSum = 0;
+
+    private Map<String, Integer> indexMap = new HashMap<>();
+
+    public int weightSum() {
+        return weightSum;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(WeightConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(ids[i], levels[0][i]);
+        }
+    }
+
+    public String select(int weight) {
+        if (weight < 0 || weight >= weightSum) {
+            return null;
+        }
+
+        int index = 0;
+
+        for (int level = levels.length - 1; level >= 0; level--) {
+            int[] sums = levels[level];
+
+            int base = index << SHIFT;
+
+            int runningSum = 0;
+            int before = 0;
+            int child = 0;
+
+            // The weight is below the sum of the block, so the count stops at a child whose range holds it.
+            for (int i = 0; i < FANOUT; i++) {
+                runningSum += sums[base + i];
+
+                int passed = runningSum <= weight ? 1 : 0;
+
+                child += passed;
+                before = passed == 1 ? runningSum : before;
+            }
+
+            weight -= before;
+            index = base + child;
+        }
+
+        return ids[index];
+    }
+
+    public void insert(String id, int weight) {
+        if (size == ids.length) {
+            grow();
+        }
+
+        int index = size++;
+
+        indexMap.put(id, index);
+
+        ids[index] = id;
+
+        add(index, weight);
+    }
+
+    public boolean remove(String id) {
+        Integer index = indexMap.remove(id);
+
+        if (index == null) {
+            return false;
+        }
+
+        int last = --size;
+
+        add(index, -levels[0][index]);
+
+        if (index != last) {
+            int lastWeight = levels[0][last];
+
+            add(last, -lastWeight);
+            add(index, lastWeight);
+
+            ids[index] = ids[last];
+            indexMap.put(ids[index], index);
+        }
+
+        ids[last] = null;
+
+        return true;
+    }
+
+    public boolean update(String id, int weight) {
+        Integer index = indexMap.get(id);
+
+        if (index == null) {
+            return false;
+        }
+
+        add(index, weight - levels[0][index]);
+
+        return true;
+    }
+
+    private void add(int index, int weightDiff) {
+        weightSum += weightDiff;
+
+        for (int[] sums: levels) {
+            sums[index] += weightDiff;
+
+            index >>>= SHIFT;
+        }
+    }
+
+    /**
+     * Doubles the capacity and rebuilds the levels above the weights, adding a level when the top block is full.
+     */
+    private void grow() {
+        int capacity = ids.length * 2;
+
+        ids = Arrays.copyOf(ids, capacity);
+
+        int[] weights = Arrays.copyOf(levels[0], capacity);
+
+        int height = 1;
+
+        for (int length = capacity; length > FANOUT; length = blockCount(length)) {
+            height++;
+        }
+
+        levels = new int[height][];
+        levels[0] = weights;
+
+        for (int level = 1; level < height; level++) {
+            int[] below = levels[level - 1];
+            int[] sums = new int[blockCount(below.length)];
+
+            for (int i = 0; i < below.length; i++) {
+                sums[i >>> SHIFT] += below[i];
+            }
+
+            levels[level] = sums;
+        }
+    }
+
+    /**
+     * Returns the length of the level above a level of the length, rounded up to whole blocks.
+     */
+    private static int blockCount(int length) {
+        int blocks = (length + FANOUT - 1) >>> SHIFT;
+
+        return (blocks + FANOUT - 1) & -FANOUT;
+    }
+
+}